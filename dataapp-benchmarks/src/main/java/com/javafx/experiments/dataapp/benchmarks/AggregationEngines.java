@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.benchmarks;
+
+import com.javafx.experiments.dataapp.server.aggregation.DailySalesCube;
+import com.javafx.experiments.dataapp.server.aggregation.DimensionRegistry;
+import com.javafx.experiments.dataapp.server.aggregation.JpaRangeAggregator;
+import com.javafx.experiments.dataapp.server.aggregation.RangeAggregator;
+import com.javafx.experiments.dataapp.server.metrics.MetricsRegistry;
+
+import javax.persistence.EntityManager;
+
+/**
+ * The aggregation engines the range benchmarks can run against, by name:
+ * <ul>
+ *     <li>jpa: the queries against H2, JpaRangeAggregator</li>
+ *     <li>cube: the in-memory DailySalesCube, loaded from H2</li>
+ *     <li>the class name of any other RangeAggregator with a public
+ *     (EntityManager, DimensionRegistry) constructor, which is expected to
+ *     load whatever it needs there</li>
+ * </ul>
+ */
+final class AggregationEngines {
+
+    static final String JPA = "jpa";
+    static final String CUBE = "cube";
+
+    private AggregationEngines() {
+    }
+
+    static RangeAggregator create(String engine, EntityManager em, DimensionRegistry dimensions) {
+        switch (engine) {
+            case JPA:
+                return new JpaRangeAggregator(em, dimensions, new MetricsRegistry());
+            case CUBE:
+                DailySalesCube cube = new DailySalesCube();
+                cube.load(em, dimensions);
+                return cube;
+            default:
+                try {
+                    return Class.forName(engine)
+                            .asSubclass(RangeAggregator.class)
+                            .getConstructor(EntityManager.class, DimensionRegistry.class)
+                            .newInstance(em, dimensions);
+                } catch (ReflectiveOperationException | ClassCastException e) {
+                    throw new IllegalArgumentException("Unknown aggregation engine " + engine, e);
+                }
+        }
+    }
+}
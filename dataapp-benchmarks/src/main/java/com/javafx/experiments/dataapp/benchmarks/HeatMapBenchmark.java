@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.benchmarks;
+
+import com.javafx.experiments.dataapp.model.MonthlyStateSales;
+import com.javafx.experiments.dataapp.simulation.MonthlyStateSalesRollup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The two monthly queries behind each DailySalesHeatMapFacadeREST request,
+ * comparing the last month of the history with the month before, for every
+ * history size. The facade runs them in parallel; here they run one after
+ * the other, so the score is the database time of a request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class HeatMapBenchmark {
+
+    //Compact SUV
+    private static final int PRODUCT_TYPE_ID = 7;
+
+    @Param({"30", "90", "365"})
+    public int days;
+
+    private EntityManagerFactory emf;
+    private EntityManager em;
+    private Date month1;
+    private Date month2;
+
+    @Setup
+    public void setUp() {
+        emf = SalesDatabase.open(days);
+        em = emf.createEntityManager();
+        month1 = em.createQuery("select max(d.date) from DailySales d", Date.class).getSingleResult();
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(month1);
+        cal.add(Calendar.MONTH, -1);
+        month2 = cal.getTime();
+    }
+
+    @TearDown
+    public void tearDown() {
+        em.close();
+        emf.close();
+    }
+
+    @Benchmark
+    public void find(Blackhole blackhole) {
+        comparePeriods(blackhole, MonthlyStateSales.ALL_PRODUCT_TYPES);
+    }
+
+    @Benchmark
+    public void findProductType(Blackhole blackhole) {
+        comparePeriods(blackhole, PRODUCT_TYPE_ID);
+    }
+
+    private void comparePeriods(Blackhole blackhole, int productTypeId) {
+        blackhole.consume(MonthlyStateSalesRollup.createUnitsByStateQuery(em, month1, productTypeId).getResultList());
+        blackhole.consume(MonthlyStateSalesRollup.createUnitsByStateQuery(em, month2, productTypeId).getResultList());
+    }
+}
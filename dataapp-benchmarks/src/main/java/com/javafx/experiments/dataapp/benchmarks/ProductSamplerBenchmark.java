@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.benchmarks;
+
+import com.javafx.experiments.dataapp.simulation.ProductSampler;
+import com.javafx.experiments.dataapp.simulation.SalesSimulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picking the product of a US sale by the base category percentages of the
+ * SalesSimulator, with its alias table and with a scan of the cumulative
+ * percentages as pickUSProduct used to do, and rebuilding the alias table as
+ * the simulator does once a day.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ProductSamplerBenchmark {
+
+    private static final double[] WEIGHTS = {SalesSimulator.US_SMALL_CAR_PCT, SalesSimulator.US_MEDIUM_CAR_PCT,
+            SalesSimulator.US_LARGE_CAR_PCT, SalesSimulator.US_PREMIUM_CAR_PCT, SalesSimulator.US_COMPACT_TRUCK_PCT,
+            SalesSimulator.US_BUS_VAN_PCT, SalesSimulator.US_FULL_SIZE_TRUCK_PCT, SalesSimulator.US_UTILIY_PCT,
+            SalesSimulator.US_PREMIUM_TRUCK_PCT, SalesSimulator.US_MED_HEAVY_TRUCK_PCT};
+
+    private final Random random = new Random(42);
+    private ProductSampler sampler;
+
+    @Setup
+    public void setUp() {
+        sampler = new ProductSampler(SalesSimulator.US_CATEGORIES, WEIGHTS);
+    }
+
+    @Benchmark
+    public int aliasTable() {
+        return sampler.sample(random);
+    }
+
+    @Benchmark
+    public int cumulativeScan() {
+        double pick = random.nextDouble() * total();
+        double sum = 0;
+        for (int i = 0; i < WEIGHTS.length; i++) {
+            sum += WEIGHTS[i];
+            if (pick <= sum) {
+                List<Integer> category = SalesSimulator.US_CATEGORIES.get(i);
+                return category.get(random.nextInt(category.size()));
+            }
+        }
+        return 0;
+    }
+
+    @Benchmark
+    public ProductSampler rebuild() {
+        return new ProductSampler(SalesSimulator.US_CATEGORIES, WEIGHTS);
+    }
+
+    private static double total() {
+        double total = 0;
+        for (double weight : WEIGHTS) {
+            total += weight;
+        }
+        return total;
+    }
+}
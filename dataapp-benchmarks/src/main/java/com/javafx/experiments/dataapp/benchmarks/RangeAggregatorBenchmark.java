@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.benchmarks;
+
+import com.javafx.experiments.dataapp.model.transit.HistoryRangeSales;
+import com.javafx.experiments.dataapp.model.transit.ProductTypeTransitCumulativeSeriesSales;
+import com.javafx.experiments.dataapp.model.transit.RegionTransitCumulativeSales;
+import com.javafx.experiments.dataapp.model.transit.StateTransitCumulativeSales;
+import com.javafx.experiments.dataapp.server.aggregation.DimensionRegistry;
+import com.javafx.experiments.dataapp.server.aggregation.RangeAggregator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The history range queries behind CumulativeLiveSalesFacadeREST, for every
+ * combination of history size, aggregation engine and range length.
+ * <p/>
+ * The range is the last N days of the history, or all of it. The region
+ * queries are for region 1, Northeast.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class RangeAggregatorBenchmark {
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final int REGION_ID = 1;
+    private static final String ALL = "all";
+
+    @Param({"30", "90", "365"})
+    public int days;
+
+    @Param({AggregationEngines.JPA, AggregationEngines.CUBE})
+    public String engine;
+
+    @Param({"7", "90", ALL})
+    public String range;
+
+    private EntityManagerFactory emf;
+    private EntityManager em;
+    private RangeAggregator aggregator;
+    private int startId;
+    private int endId;
+
+    @Setup
+    public void setUp() {
+        emf = SalesDatabase.open(days);
+        em = emf.createEntityManager();
+        aggregator = AggregationEngines.create(engine, em, DimensionRegistry.load(em));
+
+        Date from = new Date(0);
+        if (!ALL.equals(range)) {
+            Date last = em.createQuery("select max(d.date) from DailySales d", Date.class).getSingleResult();
+            from = new Date(last.getTime() - (Integer.parseInt(range) - 1) * DAY_MILLIS);
+        }
+        Object[] ids = em.createQuery("select min(d.dailySalesId), max(d.dailySalesId) from DailySales d where d.date >= :from", Object[].class)
+                .setParameter("from", from)
+                .getSingleResult();
+        startId = (Integer) ids[0];
+        endId = (Integer) ids[1];
+    }
+
+    @TearDown
+    public void tearDown() {
+        em.close();
+        emf.close();
+    }
+
+    @Benchmark
+    public List<ProductTypeTransitCumulativeSeriesSales> findTypeRange() {
+        return aggregator.findTypeRange(startId, endId);
+    }
+
+    @Benchmark
+    public List<ProductTypeTransitCumulativeSeriesSales> findTypeRegionRange() {
+        return aggregator.findTypeRegionRange(startId, endId, REGION_ID);
+    }
+
+    @Benchmark
+    public List<RegionTransitCumulativeSales> findRegionRange() {
+        return aggregator.findRegionRange(startId, endId);
+    }
+
+    @Benchmark
+    public List<StateTransitCumulativeSales> findStateRange() {
+        return aggregator.findStateRange(startId, endId, REGION_ID);
+    }
+
+    @Benchmark
+    public HistoryRangeSales findHistoryRange() {
+        return aggregator.findHistoryRange(startId, endId, 0);
+    }
+
+    @Benchmark
+    public HistoryRangeSales findHistoryRegionRange() {
+        return aggregator.findHistoryRange(startId, endId, REGION_ID);
+    }
+}
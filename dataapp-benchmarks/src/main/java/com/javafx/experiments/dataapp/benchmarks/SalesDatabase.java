@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.benchmarks;
+
+import com.javafx.experiments.dataapp.server.DataAppLoader;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.io.File;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * H2 databases of generated sales history for the benchmarks, one per scale
+ * factor, which is the number of days of history.
+ * <p/>
+ * A database is generated with the DataAppLoader the first time it is needed
+ * and reused by every later fork and run, so all engines and all runs are
+ * measured against the same rows. The databases are kept in the directory
+ * given by the dataapp.benchmark.dir system property, by default
+ * dataapp-benchmarks in the temporary directory; delete them to generate new
+ * ones. Databases generated with the dataapp.simulation.seed system property
+ * are kept apart per seed.
+ */
+public final class SalesDatabase {
+
+    private static final String PU_NAME = "DataAppLibraryPU";
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final String H2_SUFFIX = ".mv.db";
+
+    private SalesDatabase() {
+    }
+
+    public static EntityManagerFactory open(int days) {
+        File dir = new File(System.getProperty("dataapp.benchmark.dir",
+                new File(System.getProperty("java.io.tmpdir"), "dataapp-benchmarks").getPath()));
+        Long seed = Long.getLong("dataapp.simulation.seed");
+        File database = new File(dir, "sales-" + days + (seed != null ? "-seed-" + seed : ""));
+        if (!new File(database.getPath() + H2_SUFFIX).exists()) {
+            generate(dir, database, days);
+        }
+        return Persistence.createEntityManagerFactory(PU_NAME, properties(database, "none"));
+    }
+
+    /**
+     * Generates the database under a temporary name first, so a run
+     * interrupted while generating does not leave half a history behind.
+     */
+    private static void generate(File dir, File database, int days) {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IllegalStateException("Cannot create " + dir);
+        }
+        File partial = new File(dir, database.getName() + "-partial");
+        new File(partial.getPath() + H2_SUFFIX).delete();
+
+        System.out.println("Generating " + days + " days of sales history in " + database);
+        long START_TIME = System.currentTimeMillis();
+        EntityManagerFactory emf = Persistence.createEntityManagerFactory(PU_NAME, properties(partial, "create"));
+        try {
+            EntityManager em = emf.createEntityManager();
+            try {
+                DataAppLoader.loadReferenceData(em);
+                Date end = new Date();
+                DataAppLoader.loadHistory(em, new Date(end.getTime() - days * DAY_MILLIS), end);
+            } finally {
+                em.close();
+            }
+        } finally {
+            emf.close();
+        }
+        if (!new File(partial.getPath() + H2_SUFFIX).renameTo(new File(database.getPath() + H2_SUFFIX))) {
+            throw new IllegalStateException("Cannot rename " + partial + " to " + database);
+        }
+        System.out.println("Generated " + database + " in " + (System.currentTimeMillis() - START_TIME) + "ms");
+    }
+
+    private static Map<String, String> properties(File database, String schemaAction) {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("javax.persistence.jdbc.url", "jdbc:h2:" + database.getAbsolutePath());
+        properties.put("javax.persistence.schema-generation.database.action", schemaAction);
+        return properties;
+    }
+}
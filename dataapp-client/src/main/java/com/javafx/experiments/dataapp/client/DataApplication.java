@@ -33,6 +33,7 @@ package com.javafx.experiments.dataapp.client;
 
 import com.javafx.experiments.dataapp.client.rest.ProductTypeClient;
 import com.javafx.experiments.dataapp.client.rest.RegionClient;
+import com.javafx.experiments.dataapp.client.rest.RestClientFactory;
 import com.javafx.experiments.dataapp.model.ProductType;
 import com.javafx.experiments.dataapp.model.Region;
 import dataapppreloader.DataAppPreloader.PreloaderHandoverEvent;
@@ -53,7 +54,6 @@ import java.util.Vector;
  * Main Application for the Henley Car Sales Application
  */
 public class DataApplication extends Application {
-    public static final String SERVER_URI = "http://localhost:8080/dataapp-server/resources";
     private static final ObservableList<Object> americanRegions = FXCollections.observableArrayList();
     private static final ObservableList<Object> productTypes = FXCollections.observableArrayList();
     private static final Vector<Runnable> dataLoadingTasks = new Vector<>();
@@ -108,6 +108,10 @@ public class DataApplication extends Application {
                 DataApplication.class.getResource("dataapp.css").toExternalForm(),
                 dataLoadingTasks));
     }
+
+    @Override public void stop() throws Exception {
+        RestClientFactory.shutdown();
+    }
     
     public static void registerDataLoadingTask(Runnable task) {
         dataLoadingTasks.add(task);
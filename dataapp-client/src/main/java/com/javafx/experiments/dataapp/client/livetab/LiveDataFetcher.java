@@ -39,6 +39,7 @@ import com.javafx.experiments.dataapp.model.Region;
 import javafx.animation.KeyFrame;
 import javafx.animation.PauseTransition;
 import javafx.animation.Timeline;
+import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
@@ -53,7 +54,12 @@ import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.TableView;
 import javafx.scene.paint.Color;
 import javafx.util.Duration;
+import org.glassfish.jersey.media.sse.EventListener;
+import org.glassfish.jersey.media.sse.EventSource;
+import org.glassfish.jersey.media.sse.InboundEvent;
 
+import javax.ws.rs.core.MediaType;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -62,7 +68,9 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Fetches the latest sales and fetches new sales every 6 seconds
+ * Fetches the latest sales and then either has new sales pushed by the server
+ * (the default) or fetches new sales every 6 seconds when started with
+ * -Ddataapp.live.poll=true
  */
 public class LiveDataFetcher extends Service<List<LiveSalesList>> {
     public static final Map<String,Color> PRODUCT_TYPE_COLOR_MAP = new HashMap<>();
@@ -73,6 +81,7 @@ public class LiveDataFetcher extends Service<List<LiveSalesList>> {
         PRODUCT_TYPE_COLOR_MAP.put("Truck", Color.web("#860061"));
         PRODUCT_TYPE_COLOR_MAP.put("Specialty", Color.web("#2f357f"));
     }
+    public static final boolean PUSH_MODE = !Boolean.getBoolean("dataapp.live.poll");
     
     private final AtomicInteger lastQuery = new AtomicInteger(-1);
     private final AtomicReference<String> regionName = new AtomicReference<>(null);
@@ -83,6 +92,10 @@ public class LiveDataFetcher extends Service<List<LiveSalesList>> {
     private final UnitedStatesMapPane map;
     private final Group liveDots;
     private final Timeline refreshTimeline;
+    // push mode state, only touched on the FX thread
+    private LiveSalesViewClient streamClient;
+    private EventSource eventSource;
+    private final List<LiveSalesList> pendingPushed = new ArrayList<>();
     
     public LiveDataFetcher(final TableView<LiveSalesList> liveSales, final UnitedStatesMapPane map,
             final ChoiceBox regionChoiceBox, final ChoiceBox productChoiceBox) {
@@ -123,6 +136,7 @@ public class LiveDataFetcher extends Service<List<LiveSalesList>> {
                         liveMapLocate.drawComplex(l.getLatitude(), l.getLongitude(), !isFreshQuery, 
                                 PRODUCT_TYPE_COLOR_MAP.get(l.getType()));
                     }
+                    if (isFreshQuery && PUSH_MODE) applyPendingPushed();
                     // we are done reset ready for next run
                     reset();
                 }
@@ -151,6 +165,13 @@ public class LiveDataFetcher extends Service<List<LiveSalesList>> {
     
     public void startFetcher() {
         System.out.println("startFetcher()");
+        if (PUSH_MODE) {
+            updateRegionAndProductSelection();
+            // subscribe before the first query, so no sale falls in between
+            openStream();
+            start();
+            return;
+        }
         // run first time to get initial results
         start();
         // start polling
@@ -160,6 +181,7 @@ public class LiveDataFetcher extends Service<List<LiveSalesList>> {
     public void stopFetcher() {
         System.out.println("stopFetcher()");
         refreshTimeline.stop();
+        closeStream();
         // clear data
         liveDots.getChildren().clear();
         liveSales.getItems().clear();
@@ -203,6 +225,8 @@ public class LiveDataFetcher extends Service<List<LiveSalesList>> {
     public void regionOrProductChanged() {
         cancel();
         boolean regionChanged = updateRegionAndProductSelection();
+        // lastQuery is cleared when the selection changed, then the stream has to be filtered differently
+        if (PUSH_MODE && lastQuery.get() == -1) openStream();
         if (regionChanged) {
             // pause the data updating to wait for animation to finish
             PauseTransition delay = new PauseTransition(Duration.millis(1500));
@@ -217,6 +241,66 @@ public class LiveDataFetcher extends Service<List<LiveSalesList>> {
         }
     }
 
+    private void openStream() {
+        closeStream();
+        streamClient = new LiveSalesViewClient();
+        final int productTypeID = this.productTypeID.get();
+        final EventSource[] source = new EventSource[1];
+        source[0] = streamClient.openStream(regionName.get(), productTypeID > 0 ? productTypeID : null, new EventListener() {
+            /**
+             * NOTE CALLED ON THE EVENT SOURCE'S BACKGROUND THREAD
+             */
+            @Override public void onEvent(InboundEvent inboundEvent) {
+                final LiveSalesList sale = inboundEvent.readData(LiveSalesList.class, MediaType.APPLICATION_JSON_TYPE);
+                Platform.runLater(new Runnable() {
+                    @Override public void run() {
+                        salePushed(source[0], sale);
+                    }
+                });
+            }
+        });
+        eventSource = source[0];
+    }
+
+    private void closeStream() {
+        pendingPushed.clear();
+        if (eventSource != null) {
+            eventSource.close();
+            eventSource = null;
+        }
+        if (streamClient != null) {
+            streamClient.close();
+            streamClient = null;
+        }
+    }
+
+    private void salePushed(EventSource source, LiveSalesList sale) {
+        // ignore sales still queued from a stream that has been closed since
+        if (source != eventSource) return;
+        if (lastQuery.get() == -1) {
+            // first query has not come back yet, hold on to it until it has
+            pendingPushed.add(sale);
+            return;
+        }
+        // already part of the results of the first query
+        if (sale.getOrderLineId() <= lastQuery.get()) return;
+        ObservableList<LiveSalesList> items = liveSales.getItems();
+        items.add(0, sale);
+        lastQuery.set(sale.getOrderLineId());
+        liveMapLocate.drawComplex(sale.getLatitude(), sale.getLongitude(), true,
+                PRODUCT_TYPE_COLOR_MAP.get(sale.getType()));
+    }
+
+    private void applyPendingPushed() {
+        // nothing sold yet for this selection, take any pushed sale from here on
+        lastQuery.compareAndSet(-1, 0);
+        List<LiveSalesList> pushed = new ArrayList<>(pendingPushed);
+        pendingPushed.clear();
+        for (LiveSalesList sale : pushed) {
+            salePushed(eventSource, sale);
+        }
+    }
+
     @Override protected Task<List<LiveSalesList>> createTask() {
         return new Task<List<LiveSalesList>>(){
             /**
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.client.rest;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sends GET requests with If-None-Match when a body with an ETag has been
+ * received for the same URI before, and turns a 304 Not Modified answer back
+ * into that body, so callers never see the difference.
+ * <p/>
+ * Bodies are kept in memory and, so they survive a restart of the
+ * application, in ~/.dataapp/cache. When the disk cannot be written, as in a
+ * sandbox, only the memory is used. Both hold the most recently used
+ * -Ddataapp.client.cacheEntries bodies, 64 by default; the files of evicted
+ * bodies are deleted, and at startup the directory is cut down to the most
+ * recently written ones, so it never holds more than twice as many. A file is written under a temporary name and then
+ * renamed, so it is never read half written.
+ */
+public class ConditionalGetCache implements ClientRequestFilter, ClientResponseFilter {
+
+    private static final ConditionalGetCache INSTANCE = new ConditionalGetCache(
+            new File(System.getProperty("user.home"), ".dataapp" + File.separator + "cache"));
+
+    public static final int MAX_ENTRIES = Integer.getInteger("dataapp.client.cacheEntries", 64);
+
+    private static final String KEY_PROPERTY = ConditionalGetCache.class.getName() + ".key";
+    private static final String BODY_SUFFIX = ".body";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    //guarded by itself
+    private final Map<String, CachedBody> bodies = new LinkedHashMap<String, CachedBody>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedBody> eldest) {
+            if (size() <= MAX_ENTRIES) {
+                return false;
+            }
+            file(eldest.getKey()).delete();
+            return true;
+        }
+    };
+
+    public static ConditionalGetCache getInstance() {
+        return INSTANCE;
+    }
+
+    ConditionalGetCache(File directory) {
+        this.directory = directory;
+        trimDirectory();
+    }
+
+    @Override
+    public void filter(ClientRequestContext request) throws IOException {
+        if (!HttpMethod.GET.equals(request.getMethod())) {
+            return;
+        }
+        String key = request.getUri() + " " + request.getHeaderString(HttpHeaders.ACCEPT);
+        request.setProperty(KEY_PROPERTY, key);
+        CachedBody cached = find(key);
+        if (cached != null) {
+            request.getHeaders().putSingle(HttpHeaders.IF_NONE_MATCH, cached.etag);
+        }
+    }
+
+    @Override
+    public void filter(ClientRequestContext request, ClientResponseContext response) throws IOException {
+        String key = (String) request.getProperty(KEY_PROPERTY);
+        if (key == null) {
+            return;
+        }
+        if (response.getStatus() == Response.Status.NOT_MODIFIED.getStatusCode()) {
+            CachedBody cached = find(key);
+            if (cached != null) {
+                response.setStatus(Response.Status.OK.getStatusCode());
+                if (!cached.contentType.isEmpty()) {
+                    response.getHeaders().putSingle(HttpHeaders.CONTENT_TYPE, cached.contentType);
+                }
+                response.setEntityStream(new ByteArrayInputStream(cached.body));
+            }
+        } else if (response.getStatus() == Response.Status.OK.getStatusCode()) {
+            String etag = response.getHeaderString(HttpHeaders.ETAG);
+            if (etag != null && response.hasEntity()) {
+                byte[] body = readFully(response.getEntityStream());
+                response.setEntityStream(new ByteArrayInputStream(body));
+                store(key, new CachedBody(etag, response.getHeaderString(HttpHeaders.CONTENT_TYPE), body));
+            }
+        }
+    }
+
+    private CachedBody find(String key) {
+        synchronized (bodies) {
+            CachedBody cached = bodies.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        CachedBody cached = read(key);
+        if (cached != null) {
+            synchronized (bodies) {
+                bodies.putIfAbsent(key, cached);
+            }
+        }
+        return cached;
+    }
+
+    private void store(String key, CachedBody cached) {
+        synchronized (bodies) {
+            bodies.put(key, cached);
+        }
+        File temp = null;
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                return;
+            }
+            temp = File.createTempFile("body", TEMP_SUFFIX, directory);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeUTF(key);
+                out.writeUTF(cached.etag);
+                out.writeUTF(cached.contentType);
+                out.writeInt(cached.body.length);
+                out.write(cached.body);
+            }
+            try {
+                Files.move(temp.toPath(), file(key).toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file(key).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+        } catch (IOException | SecurityException e) {
+            //memory only
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Deletes the temporary files left by an interrupted write and all but
+     * the MAX_ENTRIES most recently written bodies.
+     */
+    private void trimDirectory() {
+        try {
+            File[] files = directory.listFiles();
+            if (files == null) {
+                return;
+            }
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+            int kept = 0;
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(TEMP_SUFFIX) || name.endsWith(BODY_SUFFIX) && ++kept > MAX_ENTRIES) {
+                    file.delete();
+                }
+            }
+        } catch (SecurityException e) {
+            //memory only
+        }
+    }
+
+    private CachedBody read(String key) {
+        try {
+            File file = file(key);
+            if (!file.isFile()) {
+                return null;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                //different keys can share a file name
+                if (!key.equals(in.readUTF())) {
+                    return null;
+                }
+                String etag = in.readUTF();
+                String contentType = in.readUTF();
+                byte[] body = new byte[in.readInt()];
+                in.readFully(body);
+                return new CachedBody(etag, contentType, body);
+            }
+        } catch (IOException | SecurityException e) {
+            return null;
+        }
+    }
+
+    private File file(String key) {
+        return new File(directory, Integer.toHexString(key.hashCode()) + BODY_SUFFIX);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    private static final class CachedBody {
+        private final String etag;
+        private final String contentType;
+        private final byte[] body;
+
+        CachedBody(String etag, String contentType, byte[] body) {
+            this.etag = etag;
+            this.contentType = contentType == null ? "" : contentType;
+            this.body = body;
+        }
+    }
+}
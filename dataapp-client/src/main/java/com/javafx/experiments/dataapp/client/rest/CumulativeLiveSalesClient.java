@@ -31,35 +31,29 @@
  */
 package com.javafx.experiments.dataapp.client.rest;
 
-import com.fasterxml.jackson.jaxrs.json.JacksonJaxbJsonProvider;
-import com.javafx.experiments.dataapp.client.DataApplication;
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
 
 public class CumulativeLiveSalesClient {
     private final WebTarget rootTarget;
-    private final Client client;
 
     public CumulativeLiveSalesClient() {
-        client = ClientBuilder.newClient().register(JacksonJaxbJsonProvider.class);
-        rootTarget = client.target(DataApplication.SERVER_URI).path("com.javafx.experiments.dataapp.model.cumulativelivesales");
+        rootTarget = RestClientFactory.getClient().target(RestClientFactory.SERVER_URI).path("com.javafx.experiments.dataapp.model.cumulativelivesales");
     }
 
     public <T> T findAll(Class<T> responseType) {
         WebTarget target = rootTarget.path("");
-        return target.request(MediaType.APPLICATION_JSON).get(responseType);
+        return target.request(TransitBinaryReader.ACCEPT).get(responseType);
     }
     
     public <T> T findRecent(Class<T> responseType) {
         WebTarget target = rootTarget.path("recent");
-        return target.request(MediaType.APPLICATION_JSON).get(responseType);
+        return target.request(TransitBinaryReader.ACCEPT).get(responseType);
     }
 
     public <T> T findTypeRange(Class<T> responseType, String from, String to) {
         WebTarget target = rootTarget.path("type").path(from).path(to);
-        return target.request(MediaType.APPLICATION_JSON).get(responseType);
+        return target.request(TransitBinaryReader.ACCEPT).get(responseType);
     }   
     
     public <T> T findRegionRange(Class<T> responseType, String from, String to) {
@@ -69,12 +63,12 @@ public class CumulativeLiveSalesClient {
     
     public <T> T findAllRegion(Class<T> responseType, Integer regionId) {
         WebTarget target = rootTarget.path("region").path(regionId.toString());
-        return target.request(MediaType.APPLICATION_JSON).get(responseType);
+        return target.request(TransitBinaryReader.ACCEPT).get(responseType);
     }
 
     public <T> T findTypeRegionRange(Class<T> responseType, String from, String to, Integer regionId) {
         WebTarget target = rootTarget.path("type").path(from).path(to).path(regionId.toString());
-        return target.request(MediaType.APPLICATION_JSON).get(responseType);
+        return target.request(TransitBinaryReader.ACCEPT).get(responseType);
     }   
     
     public <T> T findRegionStateRange(Class<T> responseType, String from, String to, Integer regionId) {
@@ -82,8 +76,20 @@ public class CumulativeLiveSalesClient {
         return target.request(MediaType.APPLICATION_JSON).get(responseType);
     }
 
+    public <T> T findHistoryRange(Class<T> responseType, String from, String to) {
+        WebTarget target = rootTarget.path("history").path(from).path(to);
+        return target.request(TransitBinaryReader.ACCEPT).get(responseType);
+    }
+
+    public <T> T findHistoryRange(Class<T> responseType, String from, String to, Integer regionId) {
+        WebTarget target = rootTarget.path("history").path(from).path(to).path(regionId.toString());
+        return target.request(TransitBinaryReader.ACCEPT).get(responseType);
+    }
+
+    /**
+     * Does nothing, the underlying Client is shared, see RestClientFactory.
+     */
     public void close() {
-        client.close();
     }
     
 }
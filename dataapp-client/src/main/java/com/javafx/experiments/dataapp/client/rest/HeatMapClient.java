@@ -31,21 +31,15 @@
  */
 package com.javafx.experiments.dataapp.client.rest;
 
-import com.fasterxml.jackson.jaxrs.json.JacksonJaxbJsonProvider;
-import com.javafx.experiments.dataapp.client.DataApplication;
 import java.util.Date;
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
 
 public class HeatMapClient {
     private final WebTarget rootTarget;
-    private final Client client;
 
     public HeatMapClient() {
-        client = ClientBuilder.newClient().register(JacksonJaxbJsonProvider.class);
-        rootTarget = client.target(DataApplication.SERVER_URI).path("com.javafx.experiments.dataapp.model.heatmap");
+        rootTarget = RestClientFactory.getClient().target(RestClientFactory.SERVER_URI).path("com.javafx.experiments.dataapp.model.heatmap");
     }
 
     public <T> T getDateRange(Class<T> responseType) {
@@ -55,7 +49,7 @@ public class HeatMapClient {
 
     public <T> T getHeatMap(Class<T> responseType, Date date1, Date date2) {
         WebTarget target = rootTarget.path("base").path(Long.toString(date1.getTime())).path(Long.toString(date2.getTime()));
-        return target.request(MediaType.APPLICATION_JSON).get(responseType);
+        return target.request(TransitBinaryReader.ACCEPT).get(responseType);
     }
 
     public <T> T getProductTypeHeatMap(Class<T> responseType, Date date1, Date date2, Integer productTypeId1, Integer productTypeId2) {
@@ -65,11 +59,13 @@ public class HeatMapClient {
                 .path(Long.toString(date2.getTime()))
                 .path(productTypeId1.toString())
                 .path(productTypeId2.toString());
-        return target.request(MediaType.APPLICATION_JSON).get(responseType);
+        return target.request(TransitBinaryReader.ACCEPT).get(responseType);
     }
 
+    /**
+     * Does nothing, the underlying Client is shared, see RestClientFactory.
+     */
     public void close() {
-        client.close();
     }
 
 }
@@ -31,25 +31,22 @@
  */
 package com.javafx.experiments.dataapp.client.rest;
 
-import com.javafx.experiments.dataapp.client.DataApplication;
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
-import com.fasterxml.jackson.jaxrs.json.JacksonJaxbJsonProvider;
+import org.glassfish.jersey.media.sse.EventListener;
+import org.glassfish.jersey.media.sse.EventSource;
 
 public class LiveSalesViewClient {
+    private static final String PATH = "com.javafx.experiments.dataapp.model.livesaleslist";
     private final WebTarget rootTarget;
-    private final Client client;
 
     public LiveSalesViewClient() {
-        client = ClientBuilder.newClient().register(JacksonJaxbJsonProvider.class);
-        rootTarget = client.target(DataApplication.SERVER_URI).path("com.javafx.experiments.dataapp.model.livesaleslist");
+        rootTarget = RestClientFactory.getClient().target(RestClientFactory.SERVER_URI).path(PATH);
     }
 
     public void remove(String id) {
-        rootTarget.path(id).request().delete();
+        rootTarget.path(id).request().delete().close();
     }
 
     public String countREST() {
@@ -62,11 +59,11 @@ public class LiveSalesViewClient {
     }
 
     public void edit(Object requestEntity) {
-        rootTarget.request().put(Entity.json(requestEntity));
+        rootTarget.request().put(Entity.json(requestEntity)).close();
     }
 
     public void create(Object requestEntity) {
-        rootTarget.request().post(Entity.json(requestEntity));
+        rootTarget.request().post(Entity.json(requestEntity)).close();
     }
 
     public <T> T findRange(Class<T> responseType, String from, String to) {
@@ -138,8 +135,29 @@ public class LiveSalesViewClient {
         return target.request(MediaType.APPLICATION_JSON).get(responseType);
     }
 
+    /**
+     * Subscribes to the sales committed from now on, optionally filtered by
+     * region name and product type. Each "sale" event carries a LiveSalesList
+     * as JSON. The stream stays open until it is closed.
+     */
+    public EventSource openStream(String region, Integer productTypeId, EventListener listener) {
+        WebTarget target = RestClientFactory.getStreamingClient().target(RestClientFactory.SERVER_URI).path(PATH).path("stream");
+        if (region != null) {
+            target = target.queryParam("region", region);
+        }
+        if (productTypeId != null) {
+            target = target.queryParam("productTypeId", productTypeId);
+        }
+        EventSource eventSource = EventSource.target(target).named("live-sales").build();
+        eventSource.register(listener, "sale");
+        eventSource.open();
+        return eventSource;
+    }
+
+    /**
+     * Does nothing, the underlying Client is shared, see RestClientFactory.
+     */
     public void close() {
-        client.close();
     }
     
 }
@@ -31,25 +31,19 @@
  */
 package com.javafx.experiments.dataapp.client.rest;
 
-import com.fasterxml.jackson.jaxrs.json.JacksonJaxbJsonProvider;
-import com.javafx.experiments.dataapp.client.DataApplication;
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
 
 public class ProductTypeClient {
     private final WebTarget rootTarget;
-    private final Client client;
 
     public ProductTypeClient() {
-        client = ClientBuilder.newClient().register(JacksonJaxbJsonProvider.class);
-        rootTarget = client.target(DataApplication.SERVER_URI).path("com.javafx.experiments.dataapp.model.producttype");
+        rootTarget = RestClientFactory.getClient().target(RestClientFactory.SERVER_URI).path("com.javafx.experiments.dataapp.model.producttype");
     }
 
     public void remove(String id) {
-        rootTarget.path(id).request().delete();
+        rootTarget.path(id).request().delete().close();
     }
 
     public String countREST() {
@@ -62,11 +56,11 @@ public class ProductTypeClient {
     }
 
     public void edit(Object requestEntity) {
-        rootTarget.request().put(Entity.json(requestEntity));
+        rootTarget.request().put(Entity.json(requestEntity)).close();
     }
 
     public void create(Object requestEntity) {
-        rootTarget.request().post(Entity.json(requestEntity));
+        rootTarget.request().post(Entity.json(requestEntity)).close();
     }
 
     public <T> T findRange(Class<T> responseType, String from, String to) {
@@ -79,8 +73,10 @@ public class ProductTypeClient {
         return target.request(MediaType.APPLICATION_JSON).get(responseType);
     }
 
+    /**
+     * Does nothing, the underlying Client is shared, see RestClientFactory.
+     */
     public void close() {
-        client.close();
     }
     
 }
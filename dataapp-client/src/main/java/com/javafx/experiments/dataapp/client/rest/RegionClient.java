@@ -31,25 +31,19 @@
  */
 package com.javafx.experiments.dataapp.client.rest;
 
-import com.fasterxml.jackson.jaxrs.json.JacksonJaxbJsonProvider;
-import com.javafx.experiments.dataapp.client.DataApplication;
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
 
 public class RegionClient {
     private final WebTarget rootTarget;
-    private final Client client;
 
     public RegionClient() {
-        client = ClientBuilder.newClient().register(JacksonJaxbJsonProvider.class);
-        rootTarget = client.target(DataApplication.SERVER_URI).path("com.javafx.experiments.dataapp.model.region");
+        rootTarget = RestClientFactory.getClient().target(RestClientFactory.SERVER_URI).path("com.javafx.experiments.dataapp.model.region");
     }
 
     public void remove(String id) {
-        rootTarget.path(id).request().delete();
+        rootTarget.path(id).request().delete().close();
     }
 
     public String countREST() {
@@ -67,11 +61,11 @@ public class RegionClient {
     }
 
     public void edit(Object requestEntity) {
-        rootTarget.request().put(Entity.json(requestEntity));
+        rootTarget.request().put(Entity.json(requestEntity)).close();
     }
 
     public void create(Object requestEntity) {
-        rootTarget.request().post(Entity.json(requestEntity));
+        rootTarget.request().post(Entity.json(requestEntity)).close();
     }
 
     public <T> T findRange(Class<T> responseType, String from, String to) {
@@ -84,8 +78,10 @@ public class RegionClient {
         return target.request(MediaType.APPLICATION_JSON).get(responseType);
     }
 
+    /**
+     * Does nothing, the underlying Client is shared, see RestClientFactory.
+     */
     public void close() {
-        client.close();
     }
     
 }
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.client.rest;
+
+import com.fasterxml.jackson.jaxrs.json.JacksonJaxbJsonProvider;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.media.sse.SseFeature;
+
+/**
+ * Holds the one JAX-RS Client every REST client of the application sends its
+ * requests through. Creating a Client initializes its providers and gives it
+ * its own connections, which is far more expensive than the requests the
+ * dashboard sends every few seconds, so it is done once per process.
+ * <p/>
+ * Requests go through a pool of persistent HTTP connections that are reused
+ * while the server keeps them alive. The pool holds at most
+ * dataapp.client.maxConnections connections, 20 by default.
+ * <p/>
+ * Server-sent event streams use a second shared client on the default
+ * connector instead: a stream holds its connection until it is closed, so it
+ * gains nothing from the pool, and the pooled connector would, on close, read
+ * the never ending stream to the end to keep the connection.
+ */
+public final class RestClientFactory {
+
+    /** The resources of the server, -Ddataapp.server.uri. */
+    public static final String SERVER_URI = System.getProperty("dataapp.server.uri", "http://localhost:8080/dataapp-server/resources");
+
+    public static final int MAX_CONNECTIONS = Integer.getInteger("dataapp.client.maxConnections", 20);
+
+    /** A pooled connection unused for this long is checked before being reused. */
+    private static final int VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+
+    private static final Client CLIENT = createClient();
+
+    private static final Client STREAMING_CLIENT = ClientBuilder.newClient()
+            .register(JacksonJaxbJsonProvider.class)
+            .register(SseFeature.class);
+
+    private RestClientFactory() {
+    }
+
+    public static Client getClient() {
+        return CLIENT;
+    }
+
+    /** The client to open server-sent event streams with. */
+    public static Client getStreamingClient() {
+        return STREAMING_CLIENT;
+    }
+
+    /**
+     * Closes the shared clients and their connections. Only to be called when the
+     * application exits; the REST clients cannot be used afterwards.
+     */
+    public static void shutdown() {
+        CLIENT.close();
+        STREAMING_CLIENT.close();
+    }
+
+    private static Client createClient() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        // all requests go to the one server, so a route may use the whole pool
+        connectionManager.setMaxTotal(MAX_CONNECTIONS);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MILLIS);
+        ClientConfig config = new ClientConfig()
+                .connectorProvider(new ApacheConnectorProvider())
+                .property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager)
+                .register(JacksonJaxbJsonProvider.class)
+                .register(TransitBinaryReader.class)
+                .register(ConditionalGetCache.getInstance());
+        return ClientBuilder.newClient(config);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.client.rest;
+
+import com.javafx.experiments.dataapp.model.transit.HistoryRangeSales;
+import com.javafx.experiments.dataapp.model.transit.TransitBinaryCodec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Array;
+import java.lang.reflect.Type;
+import java.util.List;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+
+/**
+ * Reads {@link TransitBinaryCodec#MEDIA_TYPE} responses into arrays or lists
+ * of transit DTOs, or into a {@link HistoryRangeSales}.
+ * <p>
+ * The binary format is opt-in: it is only asked for when the client is
+ * started with -Ddataapp.transit.binary=true, and even then JSON stays
+ * acceptable so older servers keep working.
+ */
+@Consumes(TransitBinaryCodec.MEDIA_TYPE)
+public class TransitBinaryReader implements MessageBodyReader<Object> {
+
+    public static final boolean ENABLED = Boolean.getBoolean("dataapp.transit.binary");
+
+    /** Accept header for the endpoints that can answer in the binary format. */
+    static final String[] ACCEPT = ENABLED
+            ? new String[] {TransitBinaryCodec.MEDIA_TYPE, MediaType.APPLICATION_JSON + ";q=0.5"}
+            : new String[] {MediaType.APPLICATION_JSON};
+
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        if (TransitBinaryCodec.isSupportedValue(type)) {
+            return true;
+        }
+        Class<?> elementType = TransitBinaryCodec.elementType(type, genericType);
+        return elementType != null && TransitBinaryCodec.isSupported(elementType);
+    }
+
+    @Override
+    public Object readFrom(Class<Object> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+            MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException {
+        if (TransitBinaryCodec.isSupportedValue(type)) {
+            return TransitBinaryCodec.readHistory(entityStream);
+        }
+        Class<?> elementType = TransitBinaryCodec.elementType(type, genericType);
+        List<?> values = TransitBinaryCodec.read(elementType, entityStream);
+        if (!type.isArray()) {
+            return values;
+        }
+        return values.toArray((Object[]) Array.newInstance(elementType, values.size()));
+    }
+}
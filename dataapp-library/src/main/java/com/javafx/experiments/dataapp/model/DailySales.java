@@ -53,7 +53,8 @@ public class DailySales implements Serializable {
     private static final long serialVersionUID = 1L;
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SequenceGenerator(name = "DAILY_SALES_SEQ", schema = "APP", sequenceName = "DAILY_SALES_SEQ", allocationSize = 50)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "DAILY_SALES_SEQ")
     @Basic(optional = false)
     @Column(name = "DAILY_SALES_ID")
     private Integer dailySalesId;
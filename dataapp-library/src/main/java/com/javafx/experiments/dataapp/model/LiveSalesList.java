@@ -49,23 +49,24 @@ import javax.xml.bind.annotation.XmlRootElement;
 @XmlRootElement
 @NamedQueries({
     @NamedQuery(name = "LiveSalesList.findAll", query = "SELECT l FROM LiveSalesList l"),
+    @NamedQuery(name = "LiveSalesList.findRecent", query = "SELECT l FROM LiveSalesList l ORDER BY l.orderLineId DESC"),
     @NamedQuery(name = "LiveSalesList.findByOrderLineId", query = "SELECT l FROM LiveSalesList l WHERE l.orderLineId = :orderLineId"),
     @NamedQuery(name = "LiveSalesList.findByProduct", query = "SELECT l FROM LiveSalesList l WHERE l.product = :product"),
-    @NamedQuery(name = "LiveSalesList.findByProductTypeId", query = "SELECT l FROM LiveSalesList l WHERE l.productTypeId = :productTypeId"),
+    @NamedQuery(name = "LiveSalesList.findByProductTypeId", query = "SELECT l FROM LiveSalesList l WHERE l.productTypeId = :productTypeId ORDER BY l.orderLineId DESC"),
     @NamedQuery(name = "LiveSalesList.findByType", query = "SELECT l FROM LiveSalesList l WHERE l.type = :type"),
     @NamedQuery(name = "LiveSalesList.findBySubType", query = "SELECT l FROM LiveSalesList l WHERE l.subType = :subType"),
     @NamedQuery(name = "LiveSalesList.findByPrice", query = "SELECT l FROM LiveSalesList l WHERE l.price = :price"),
-    @NamedQuery(name = "LiveSalesList.findByRegion", query = "SELECT l FROM LiveSalesList l WHERE l.region = :region"),
+    @NamedQuery(name = "LiveSalesList.findByRegion", query = "SELECT l FROM LiveSalesList l WHERE l.region = :region ORDER BY l.orderLineId DESC"),
     @NamedQuery(name = "LiveSalesList.findByChannel", query = "SELECT l FROM LiveSalesList l WHERE l.channel = :channel"),
     @NamedQuery(name = "LiveSalesList.findByQuantity", query = "SELECT l FROM LiveSalesList l WHERE l.quantity = :quantity"),
     @NamedQuery(name = "LiveSalesList.findByDealer", query = "SELECT l FROM LiveSalesList l WHERE l.dealer = :dealer"),
     @NamedQuery(name = "LiveSalesList.findBySalesman", query = "SELECT l FROM LiveSalesList l WHERE l.salesman = :salesman"),
     @NamedQuery(name = "LiveSalesList.findByDate", query = "SELECT l FROM LiveSalesList l WHERE l.date = :date"),
-    @NamedQuery(name = "LiveSalesList.findFromOrderLineId", query = "SELECT l FROM LiveSalesList l WHERE l.orderLineId > :orderLineId"),
-    @NamedQuery(name = "LiveSalesList.findByRegionFromOrderLineId", query = "SELECT l FROM LiveSalesList l WHERE l.region = :region AND l.orderLineId > :orderLineId"),
-    @NamedQuery(name = "LiveSalesList.findByProductTypeFromOrderLineId", query = "SELECT l FROM LiveSalesList l WHERE l.productTypeId = :productTypeId AND l.orderLineId > :orderLineId"),
-    @NamedQuery(name = "LiveSalesList.findByProductTypeIdByRegion", query = "SELECT l FROM LiveSalesList l WHERE l.productTypeId = :productTypeId AND l.region = :region"),
-    @NamedQuery(name = "LiveSalesList.findByProductTypeIdByRegionFromOrderLineId", query = "SELECT l FROM LiveSalesList l WHERE l.productTypeId = :productTypeId AND l.region = :region AND l.orderLineId > :orderLineId")})
+    @NamedQuery(name = "LiveSalesList.findFromOrderLineId", query = "SELECT l FROM LiveSalesList l WHERE l.orderLineId > :orderLineId ORDER BY l.orderLineId DESC"),
+    @NamedQuery(name = "LiveSalesList.findByRegionFromOrderLineId", query = "SELECT l FROM LiveSalesList l WHERE l.region = :region AND l.orderLineId > :orderLineId ORDER BY l.orderLineId DESC"),
+    @NamedQuery(name = "LiveSalesList.findByProductTypeFromOrderLineId", query = "SELECT l FROM LiveSalesList l WHERE l.productTypeId = :productTypeId AND l.orderLineId > :orderLineId ORDER BY l.orderLineId DESC"),
+    @NamedQuery(name = "LiveSalesList.findByProductTypeIdByRegion", query = "SELECT l FROM LiveSalesList l WHERE l.productTypeId = :productTypeId AND l.region = :region ORDER BY l.orderLineId DESC"),
+    @NamedQuery(name = "LiveSalesList.findByProductTypeIdByRegionFromOrderLineId", query = "SELECT l FROM LiveSalesList l WHERE l.productTypeId = :productTypeId AND l.region = :region AND l.orderLineId > :orderLineId ORDER BY l.orderLineId DESC")})
 public class LiveSalesList implements Serializable {
     private static final long serialVersionUID = 1L;
 
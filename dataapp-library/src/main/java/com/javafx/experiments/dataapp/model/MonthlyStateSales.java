@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.model;
+
+import java.io.Serializable;
+import java.util.Date;
+import javax.persistence.*;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Units sold per month, state and product type, rolled up from DAILY_SALES
+ * for the heat map. The units over all product types of a month and state
+ * are stored under {@link #ALL_PRODUCT_TYPES}.
+ */
+@Entity
+@Table(name = "MONTHLY_STATE_SALES", schema = "APP", indexes = {
+        @Index(columnList = "SALES_MONTH, PRODUCT_TYPE_ID, STATE_PROV_CD", unique = true)
+})
+@XmlRootElement
+@NamedQueries({
+    @NamedQuery(name = "MonthlyStateSales.findAll", query = "SELECT m FROM MonthlyStateSales m"),
+    @NamedQuery(name = "MonthlyStateSales.findBySalesMonth", query = "SELECT m FROM MonthlyStateSales m WHERE m.salesMonth = :salesMonth"),
+    @NamedQuery(name = "MonthlyStateSales.findBySalesMonthAndProductTypeId", query = "SELECT m FROM MonthlyStateSales m WHERE m.salesMonth = :salesMonth AND m.productTypeId = :productTypeId")})
+public class MonthlyStateSales implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int ALL_PRODUCT_TYPES = -1;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Basic(optional = false)
+    @Column(name = "MONTHLY_STATE_SALES_ID")
+    private Integer monthlyStateSalesId;
+
+    @Basic(optional = false)
+    @Column(name = "SALES_MONTH")
+    @Temporal(TemporalType.DATE)
+    private Date salesMonth;
+
+    @Column(name = "STATE_PROV_CD")
+    private String stateProvCd;
+
+    @Basic(optional = false)
+    @Column(name = "PRODUCT_TYPE_ID")
+    private Integer productTypeId;
+
+    @Column(name = "QUANTITY")
+    private Long quantity;
+
+    public MonthlyStateSales() {
+    }
+
+    public MonthlyStateSales(Date salesMonth, String stateProvCd, Integer productTypeId) {
+        this.salesMonth = salesMonth;
+        this.stateProvCd = stateProvCd;
+        this.productTypeId = productTypeId;
+        this.quantity = 0L;
+    }
+
+    public Integer getMonthlyStateSalesId() {
+        return monthlyStateSalesId;
+    }
+
+    public void setMonthlyStateSalesId(Integer monthlyStateSalesId) {
+        this.monthlyStateSalesId = monthlyStateSalesId;
+    }
+
+    public Date getSalesMonth() {
+        return salesMonth;
+    }
+
+    public void setSalesMonth(Date salesMonth) {
+        this.salesMonth = salesMonth;
+    }
+
+    public String getStateProvCd() {
+        return stateProvCd;
+    }
+
+    public void setStateProvCd(String stateProvCd) {
+        this.stateProvCd = stateProvCd;
+    }
+
+    public Integer getProductTypeId() {
+        return productTypeId;
+    }
+
+    public void setProductTypeId(Integer productTypeId) {
+        this.productTypeId = productTypeId;
+    }
+
+    public Long getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Long quantity) {
+        this.quantity = quantity;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        hash += (monthlyStateSalesId != null ? monthlyStateSalesId.hashCode() : 0);
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof MonthlyStateSales)) {
+            return false;
+        }
+        MonthlyStateSales other = (MonthlyStateSales) object;
+        return !((this.monthlyStateSalesId == null && other.monthlyStateSalesId != null) || (this.monthlyStateSalesId != null && !this.monthlyStateSalesId.equals(other.monthlyStateSalesId)));
+    }
+
+    @Override
+    public String toString() {
+        return "com.javafx.experiments.dataapp.model.MonthlyStateSales[ monthlyStateSalesId=" + monthlyStateSalesId + " ]";
+    }
+}
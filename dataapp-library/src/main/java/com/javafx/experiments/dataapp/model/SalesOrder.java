@@ -70,7 +70,8 @@ public class SalesOrder implements Serializable {
     private Customer customer;
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SequenceGenerator(name = "SALES_ORDER_SEQ", schema = "APP", sequenceName = "SALES_ORDER_SEQ", allocationSize = 50)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "SALES_ORDER_SEQ")
     @Basic(optional = false)
     @Column(name = "ORDER_ID")
     private Integer orderId;
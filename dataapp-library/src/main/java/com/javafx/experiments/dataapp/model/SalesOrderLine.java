@@ -54,7 +54,8 @@ public class SalesOrderLine implements Serializable {
     private DiscountRate discountRate;
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SequenceGenerator(name = "SALES_ORDER_LINE_SEQ", schema = "APP", sequenceName = "SALES_ORDER_LINE_SEQ", allocationSize = 50)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "SALES_ORDER_LINE_SEQ")
     @Basic(optional = false)
     @Column(name = "ORDER_LINE_ID")
     private Integer orderLineId;
@@ -0,0 +1,591 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.model.transit;
+
+import com.javafx.experiments.dataapp.model.ProductType;
+import com.javafx.experiments.dataapp.model.Region;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of lists of {@link TransitCumulativeSales},
+ * {@link ProductTypeTransitCumulativeSeriesSales} and {@link HeatMapQuantity},
+ * and of single {@link HistoryRangeSales}, offered by the server as
+ * {@link #MEDIA_TYPE} next to XML and JSON.
+ * <p>
+ * A message starts with a header (magic, version, element kind), followed by
+ * a string dictionary and a product type dictionary, and then the records.
+ * Records refer to strings and product types by their dictionary index, ids
+ * and counts are zigzag varints, dates are deltas to the previous record, and
+ * series are packed either as varints, when every value is integral, or as
+ * raw doubles. Only the exact classes above are supported, subclasses carry
+ * fields this format does not know about.
+ */
+public final class TransitBinaryCodec {
+
+    public static final String MEDIA_TYPE = "application/x-dataapp-transit";
+
+    private static final int MAGIC = 0x4454; // "DT"
+    private static final int VERSION = 1;
+
+    private static final int KIND_CUMULATIVE = 1;
+    private static final int KIND_SERIES = 2;
+    private static final int KIND_HEAT_MAP = 3;
+    private static final int KIND_HISTORY = 4;
+
+    private static final int SERIES_DOUBLES = 0;
+    private static final int SERIES_VARINTS = 1;
+
+    private TransitBinaryCodec() {
+    }
+
+    public static boolean isSupported(Class<?> elementType) {
+        return kindOf(elementType) != 0;
+    }
+
+    /**
+     * Returns whether single values of the type, rather than lists of them,
+     * are supported.
+     */
+    public static boolean isSupportedValue(Class<?> type) {
+        return type == HistoryRangeSales.class;
+    }
+
+    /**
+     * Returns the element class of an array or collection type, or null if it
+     * is neither or its element type is not a plain class.
+     */
+    public static Class<?> elementType(Class<?> type, Type genericType) {
+        if (type.isArray()) {
+            return type.getComponentType();
+        }
+        if (Collection.class.isAssignableFrom(type) && genericType instanceof ParameterizedType) {
+            Type[] args = ((ParameterizedType) genericType).getActualTypeArguments();
+            if (args.length == 1 && args[0] instanceof Class) {
+                return (Class<?>) args[0];
+            }
+        }
+        return null;
+    }
+
+    public static void write(Class<?> elementType, Collection<?> values, OutputStream out) throws IOException {
+        int kind = kindOf(elementType);
+        if (kind == 0) {
+            throw new IllegalArgumentException("Unsupported element type " + elementType.getName());
+        }
+        Writer w = new Writer(new DataOutputStream(out));
+        writeHeader(w.out, kind);
+
+        //dictionaries go first, so the reader can resolve references as it reads records
+        for (Object o : values) {
+            if (kind == KIND_HEAT_MAP) {
+                HeatMapQuantity q = (HeatMapQuantity) o;
+                w.string(q.getStateProvCd());
+                w.string(q.getRegionName());
+            } else if (kind == KIND_SERIES) {
+                w.productType(((ProductTypeTransitCumulativeSeriesSales) o).getProductType());
+            }
+        }
+        writeDictionaries(w);
+
+        writeVarInt(w.out, values.size());
+        long previousDate = 0;
+        for (Object o : values) {
+            switch (kind) {
+                case KIND_HEAT_MAP:
+                    HeatMapQuantity q = (HeatMapQuantity) o;
+                    writeNullableLong(w.out, q.getQuantity());
+                    writeVarInt(w.out, w.ref(q.getStateProvCd()));
+                    writeVarInt(w.out, w.ref(q.getRegionName()));
+                    break;
+                case KIND_SERIES:
+                    previousDate = writeSeriesSales(w, (ProductTypeTransitCumulativeSeriesSales) o, previousDate);
+                    break;
+                default:
+                    previousDate = writeCumulative(w.out, (TransitCumulativeSales) o, previousDate);
+            }
+        }
+        w.out.flush();
+    }
+
+    /**
+     * Writes the product type and region lists of a history range and, for a
+     * region, its state list, each as the length plus one, zero for null.
+     */
+    public static void writeHistory(HistoryRangeSales history, OutputStream out) throws IOException {
+        Writer w = new Writer(new DataOutputStream(out));
+        writeHeader(w.out, KIND_HISTORY);
+
+        if (history.getProductTypes() != null) {
+            for (ProductTypeTransitCumulativeSeriesSales s : history.getProductTypes()) {
+                w.productType(s.getProductType());
+            }
+        }
+        if (history.getRegions() != null) {
+            for (RegionTransitCumulativeSales r : history.getRegions()) {
+                if (r.getRegion() != null) {
+                    w.string(r.getRegion().getName());
+                }
+            }
+        }
+        if (history.getStates() != null) {
+            for (StateTransitCumulativeSales st : history.getStates()) {
+                w.string(st.getState());
+            }
+        }
+        writeDictionaries(w);
+
+        writeListSize(w.out, history.getProductTypes());
+        if (history.getProductTypes() != null) {
+            long previousDate = 0;
+            for (ProductTypeTransitCumulativeSeriesSales s : history.getProductTypes()) {
+                previousDate = writeSeriesSales(w, s, previousDate);
+            }
+        }
+        writeListSize(w.out, history.getRegions());
+        if (history.getRegions() != null) {
+            long previousDate = 0;
+            for (RegionTransitCumulativeSales r : history.getRegions()) {
+                previousDate = writeCumulative(w.out, r, previousDate);
+                writeRegion(w, r.getRegion());
+            }
+        }
+        writeListSize(w.out, history.getStates());
+        if (history.getStates() != null) {
+            long previousDate = 0;
+            for (StateTransitCumulativeSales st : history.getStates()) {
+                previousDate = writeCumulative(w.out, st, previousDate);
+                writeVarInt(w.out, w.ref(st.getState()));
+            }
+        }
+        w.out.flush();
+    }
+
+    public static HistoryRangeSales readHistory(InputStream in) throws IOException {
+        DataInputStream din = new DataInputStream(in);
+        readHeader(din, KIND_HISTORY, HistoryRangeSales.class);
+        String[] strings = readStrings(din);
+        ProductType[] productTypes = readProductTypes(din, strings);
+
+        HistoryRangeSales history = new HistoryRangeSales();
+        int size = readVarInt(din) - 1;
+        if (size >= 0) {
+            List<ProductTypeTransitCumulativeSeriesSales> series = new ArrayList<>(size);
+            long previousDate = 0;
+            for (int i = 0; i < size; i++) {
+                ProductTypeTransitCumulativeSeriesSales s = new ProductTypeTransitCumulativeSeriesSales();
+                previousDate = readSeriesSales(din, s, productTypes, previousDate);
+                series.add(s);
+            }
+            history.setProductTypes(series);
+        }
+        size = readVarInt(din) - 1;
+        if (size >= 0) {
+            List<RegionTransitCumulativeSales> regions = new ArrayList<>(size);
+            long previousDate = 0;
+            for (int i = 0; i < size; i++) {
+                RegionTransitCumulativeSales r = new RegionTransitCumulativeSales();
+                previousDate = readCumulative(din, r, previousDate);
+                r.setRegion(readRegion(din, strings));
+                regions.add(r);
+            }
+            history.setRegions(regions);
+        }
+        size = readVarInt(din) - 1;
+        if (size >= 0) {
+            List<StateTransitCumulativeSales> states = new ArrayList<>(size);
+            long previousDate = 0;
+            for (int i = 0; i < size; i++) {
+                StateTransitCumulativeSales st = new StateTransitCumulativeSales();
+                previousDate = readCumulative(din, st, previousDate);
+                st.setState(lookup(strings, readVarInt(din)));
+                states.add(st);
+            }
+            history.setStates(states);
+        }
+        return history;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> List<T> read(Class<T> elementType, InputStream in) throws IOException {
+        DataInputStream din = new DataInputStream(in);
+        int kind = kindOf(elementType);
+        readHeader(din, kind, elementType);
+        String[] strings = readStrings(din);
+        ProductType[] productTypes = readProductTypes(din, strings);
+
+        int count = readVarInt(din);
+        List<T> result = new ArrayList<>(count);
+        long previousDate = 0;
+        for (int i = 0; i < count; i++) {
+            switch (kind) {
+                case KIND_HEAT_MAP:
+                    HeatMapQuantity q = new HeatMapQuantity();
+                    q.setQuantity(readNullableLong(din));
+                    q.setStateProvCd(lookup(strings, readVarInt(din)));
+                    q.setRegionName(lookup(strings, readVarInt(din)));
+                    result.add((T) q);
+                    break;
+                case KIND_SERIES:
+                    ProductTypeTransitCumulativeSeriesSales s = new ProductTypeTransitCumulativeSeriesSales();
+                    previousDate = readSeriesSales(din, s, productTypes, previousDate);
+                    result.add((T) s);
+                    break;
+                default:
+                    TransitCumulativeSales t = new TransitCumulativeSales();
+                    previousDate = readCumulative(din, t, previousDate);
+                    result.add((T) t);
+            }
+        }
+        return result;
+    }
+
+    private static int kindOf(Class<?> elementType) {
+        if (elementType == TransitCumulativeSales.class) {
+            return KIND_CUMULATIVE;
+        } else if (elementType == ProductTypeTransitCumulativeSeriesSales.class) {
+            return KIND_SERIES;
+        } else if (elementType == HeatMapQuantity.class) {
+            return KIND_HEAT_MAP;
+        }
+        return 0;
+    }
+
+    private static void writeHeader(DataOutputStream out, int kind) throws IOException {
+        out.writeShort(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(kind);
+    }
+
+    private static void readHeader(DataInputStream in, int expectedKind, Class<?> type) throws IOException {
+        if (in.readUnsignedShort() != MAGIC || in.readUnsignedByte() != VERSION) {
+            throw new IOException("Not a " + MEDIA_TYPE + " message");
+        }
+        int kind = in.readUnsignedByte();
+        if (kind != expectedKind) {
+            throw new IOException("Message holds kind " + kind + ", cannot read it as " + type.getName());
+        }
+    }
+
+    private static void writeDictionaries(Writer w) throws IOException {
+        writeVarInt(w.out, w.strings.size());
+        for (String s : w.strings.keySet()) {
+            w.out.writeUTF(s);
+        }
+        writeVarInt(w.out, w.productTypes.size());
+        for (ProductType pt : w.productTypes.keySet()) {
+            writeNullableInt(w.out, pt.getProductTypeId());
+            writeVarInt(w.out, w.ref(pt.getClass1()));
+            writeVarInt(w.out, w.ref(pt.getSubclass()));
+        }
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        String[] strings = new String[readVarInt(in)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readUTF();
+        }
+        return strings;
+    }
+
+    private static ProductType[] readProductTypes(DataInputStream in, String[] strings) throws IOException {
+        ProductType[] productTypes = new ProductType[readVarInt(in)];
+        for (int i = 0; i < productTypes.length; i++) {
+            ProductType pt = new ProductType(readNullableInt(in));
+            pt.setClass1(lookup(strings, readVarInt(in)));
+            pt.setSubclass(lookup(strings, readVarInt(in)));
+            productTypes[i] = pt;
+        }
+        return productTypes;
+    }
+
+    private static long writeSeriesSales(Writer w, ProductTypeTransitCumulativeSeriesSales s, long previousDate) throws IOException {
+        previousDate = writeCumulative(w.out, s, previousDate);
+        Integer pt = w.productTypes.get(s.getProductType());
+        writeVarInt(w.out, pt == null ? 0 : pt + 1);
+        writeSeries(w.out, s.getSeries());
+        return previousDate;
+    }
+
+    private static long readSeriesSales(DataInputStream in, ProductTypeTransitCumulativeSeriesSales s,
+            ProductType[] productTypes, long previousDate) throws IOException {
+        previousDate = readCumulative(in, s, previousDate);
+        int pt = readVarInt(in);
+        if (pt > productTypes.length) {
+            throw new IOException("Bad product type reference " + pt);
+        }
+        s.setProductType(pt == 0 ? null : productTypes[pt - 1]);
+        s.setSeries(readSeries(in));
+        return previousDate;
+    }
+
+    /**
+     * Writes whether there is a region and then its id, name, international
+     * flag and zones; the few regions are not worth a dictionary.
+     */
+    private static void writeRegion(Writer w, Region r) throws IOException {
+        w.out.writeBoolean(r != null);
+        if (r == null) {
+            return;
+        }
+        writeNullableInt(w.out, r.getRegionId());
+        writeVarInt(w.out, w.ref(r.getName()));
+        writeVarLong(w.out, zigzag(r.getInternational()));
+        writeVarLong(w.out, zigzag(r.getStartZone()));
+        writeVarLong(w.out, zigzag(r.getEndZone()));
+    }
+
+    private static Region readRegion(DataInputStream in, String[] strings) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        Integer regionId = readNullableInt(in);
+        String name = lookup(strings, readVarInt(in));
+        Region r = new Region(regionId, (short) unzigzag(readVarLong(in)), (int) unzigzag(readVarLong(in)),
+                (int) unzigzag(readVarLong(in)));
+        r.setName(name);
+        return r;
+    }
+
+    private static void writeListSize(DataOutputStream out, List<?> list) throws IOException {
+        writeVarInt(out, list == null ? 0 : list.size() + 1);
+    }
+
+    private static final int HAS_COST = 1;
+    private static final int HAS_SALES = 2;
+    private static final int HAS_UNITS = 4;
+    private static final int HAS_START = 8;
+    private static final int HAS_END = 16;
+    private static final int HAS_DATE = 32;
+
+    private static long writeCumulative(DataOutputStream out, TransitCumulativeSales t, long previousDate) throws IOException {
+        int flags = (t.getCost() != null ? HAS_COST : 0)
+                | (t.getSales() != null ? HAS_SALES : 0)
+                | (t.getUnits() != null ? HAS_UNITS : 0)
+                | (t.getStartDailySalesId() != null ? HAS_START : 0)
+                | (t.getEndDailySalesId() != null ? HAS_END : 0)
+                | (t.getDate() != null ? HAS_DATE : 0);
+        out.writeByte(flags);
+        if (t.getCost() != null) {
+            out.writeDouble(t.getCost());
+        }
+        if (t.getSales() != null) {
+            out.writeDouble(t.getSales());
+        }
+        if (t.getUnits() != null) {
+            writeVarLong(out, zigzag(t.getUnits()));
+        }
+        if (t.getStartDailySalesId() != null) {
+            writeVarLong(out, zigzag(t.getStartDailySalesId()));
+        }
+        if (t.getEndDailySalesId() != null) {
+            //the end of a range is close to its start
+            long base = t.getStartDailySalesId() != null ? t.getStartDailySalesId() : 0;
+            writeVarLong(out, zigzag(t.getEndDailySalesId() - base));
+        }
+        if (t.getDate() != null) {
+            long date = t.getDate().getTime();
+            writeVarLong(out, zigzag(date - previousDate));
+            return date;
+        }
+        return previousDate;
+    }
+
+    private static long readCumulative(DataInputStream in, TransitCumulativeSales t, long previousDate) throws IOException {
+        int flags = in.readUnsignedByte();
+        if ((flags & HAS_COST) != 0) {
+            t.setCost(in.readDouble());
+        }
+        if ((flags & HAS_SALES) != 0) {
+            t.setSales(in.readDouble());
+        }
+        if ((flags & HAS_UNITS) != 0) {
+            t.setUnits(unzigzag(readVarLong(in)));
+        }
+        if ((flags & HAS_START) != 0) {
+            t.setStartDailySalesId((int) unzigzag(readVarLong(in)));
+        }
+        if ((flags & HAS_END) != 0) {
+            long base = t.getStartDailySalesId() != null ? t.getStartDailySalesId() : 0;
+            t.setEndDailySalesId((int) (base + unzigzag(readVarLong(in))));
+        }
+        if ((flags & HAS_DATE) != 0) {
+            long date = previousDate + unzigzag(readVarLong(in));
+            t.setDate(new Date(date));
+            return date;
+        }
+        return previousDate;
+    }
+
+    /**
+     * Writes the length plus one (zero for a null series), the packing and
+     * the values. Null elements can only be represented as NaN.
+     */
+    private static void writeSeries(DataOutputStream out, List<Double> series) throws IOException {
+        if (series == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        writeVarInt(out, series.size() + 1);
+        boolean integral = true;
+        for (Double d : series) {
+            if (d == null || d != Math.rint(d) || Math.abs(d) > (1L << 53)) {
+                integral = false;
+                break;
+            }
+        }
+        out.writeByte(integral ? SERIES_VARINTS : SERIES_DOUBLES);
+        for (Double d : series) {
+            if (integral) {
+                writeVarLong(out, zigzag(d.longValue()));
+            } else {
+                out.writeDouble(d == null ? Double.NaN : d);
+            }
+        }
+    }
+
+    private static List<Double> readSeries(DataInputStream in) throws IOException {
+        int size = readVarInt(in) - 1;
+        if (size < 0) {
+            return null;
+        }
+        boolean integral = in.readUnsignedByte() == SERIES_VARINTS;
+        List<Double> series = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            series.add(integral ? (double) unzigzag(readVarLong(in)) : in.readDouble());
+        }
+        return series;
+    }
+
+    private static void writeNullableInt(DataOutputStream out, Integer value) throws IOException {
+        writeNullableLong(out, value == null ? null : value.longValue());
+    }
+
+    private static Integer readNullableInt(DataInputStream in) throws IOException {
+        Long value = readNullableLong(in);
+        return value == null ? null : value.intValue();
+    }
+
+    private static void writeNullableLong(DataOutputStream out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            writeVarLong(out, zigzag(value));
+        }
+    }
+
+    private static Long readNullableLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? unzigzag(readVarLong(in)) : null;
+    }
+
+    private static String lookup(String[] strings, int ref) throws IOException {
+        if (ref > strings.length) {
+            throw new IOException("Bad string reference " + ref);
+        }
+        return ref == 0 ? null : strings[ref - 1];
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int v) throws IOException {
+        writeVarLong(out, v & 0xFFFFFFFFL);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        return (int) readVarLong(in);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /** Builds the dictionaries of one message, in first-seen order. */
+    private static final class Writer {
+        final DataOutputStream out;
+        final Map<String, Integer> strings = new LinkedHashMap<>();
+        final Map<ProductType, Integer> productTypes = new LinkedHashMap<>();
+
+        Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void string(String s) {
+            if (s != null && !strings.containsKey(s)) {
+                strings.put(s, strings.size());
+            }
+        }
+
+        void productType(ProductType pt) {
+            if (pt != null && !productTypes.containsKey(pt)) {
+                productTypes.put(pt, productTypes.size());
+                string(pt.getClass1());
+                string(pt.getSubclass());
+            }
+        }
+
+        int ref(String s) {
+            return s == null ? 0 : strings.get(s) + 1;
+        }
+    }
+}
@@ -37,9 +37,11 @@ import javax.persistence.EntityManager;
 import javax.persistence.EntityTransaction;
 import javax.persistence.Parameter;
 import javax.persistence.TypedQuery;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class DailySalesGenerator implements Runnable {
     private final EntityManager em;
@@ -67,13 +69,24 @@ public class DailySalesGenerator implements Runnable {
             + "sol.product.productId";
     
     private static final String REMOVE_QUERY = "select so from SalesOrder so where so.date < :date1";
+    private static final String REMOVE_LIVE_SALES_QUERY = "delete from LiveSalesList l where l.date < :date1";
         
     private TypedQuery<Object[]> baseQuery;
     private TypedQuery<SalesOrder> removeQuery;
+
+    private final List<DailySalesListener> listeners = new CopyOnWriteArrayList<>();
         
     public DailySalesGenerator(EntityManager em){
         this.em = em;        
     }
+
+    public void addDailySalesListener(DailySalesListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeDailySalesListener(DailySalesListener listener) {
+        listeners.remove(listener);
+    }
     
      /**
      * Generate a single sales record for the current date and time
@@ -87,16 +100,21 @@ public class DailySalesGenerator implements Runnable {
 
         EntityTransaction trx = em.getTransaction();
         trx.begin();
-        generate(cal.getTime());
-        trx.commit();
+        List<DailySales> dailySales = generate(cal.getTime());
         em.flush();
+        trx.commit();
         em.clear();
+
+        for (DailySalesListener listener : listeners) {
+            listener.dailySalesCommitted(dailySales);
+        }
     }
     
-    private void generate(Date date){
+    private List<DailySales> generate(Date date){
         Parameter<Date> p1 = baseQuery.getParameter("date1", Date.class);
         baseQuery.setParameter(p1, date);
         List<Object[]> results = baseQuery.getResultList();
+        List<DailySales> dailySales = new ArrayList<>(results.size());
         for (Object[] result : results){
             DailySales hourlySales = new DailySales();
             Region region = em.find(Region.class, result[0]);
@@ -112,8 +130,11 @@ public class DailySalesGenerator implements Runnable {
             cal.set(Calendar.DAY_OF_MONTH, (Integer) result[6]);
             hourlySales.setDate(cal.getTime());
             em.persist(hourlySales);
+            dailySales.add(hourlySales);
         }
+        MonthlyStateSalesRollup.merge(em, dailySales);
         removeStaleEntries(date);
+        return dailySales;
     }
     
     private void removeStaleEntries(Date date){
@@ -124,5 +145,8 @@ public class DailySalesGenerator implements Runnable {
                 em.remove(sol);
             em.remove(so);
         } 
+        em.createQuery(REMOVE_LIVE_SALES_QUERY)
+                .setParameter("date1", date)
+                .executeUpdate();
     }
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.simulation;
+
+import com.javafx.experiments.dataapp.model.DailySales;
+import com.javafx.experiments.dataapp.model.MonthlyStateSales;
+import com.javafx.experiments.dataapp.model.Product;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains the MONTHLY_STATE_SALES rollup of the DAILY_SALES table.
+ * <p/>
+ * The rollup is rebuilt in bulk once the initial load has written the sales
+ * history, and afterwards the DailySalesGenerator merges the units of every
+ * day it moves over into it. Both have to be called inside a transaction.
+ */
+public final class MonthlyStateSalesRollup {
+
+    private static final String DELETE_SQL = "DELETE FROM APP.MONTHLY_STATE_SALES";
+
+    private static final String MONTH_OF_DATE = "DATEADD('DAY', 1 - DAY_OF_MONTH(DS.DATE), DS.DATE)";
+
+    private static final String INSERT_BY_TYPE_SQL =
+            "INSERT INTO APP.MONTHLY_STATE_SALES (SALES_MONTH, STATE_PROV_CD, PRODUCT_TYPE_ID, QUANTITY) "
+            + "SELECT M.SALES_MONTH, M.STATE_PROV_CD, M.PRODUCT_TYPE_ID, SUM(M.QUANTITY) "
+            + "FROM ("
+                + "SELECT " + MONTH_OF_DATE + " AS SALES_MONTH, DS.STATE_PROV_CD, P.PRODUCT_TYPE_ID, DS.QUANTITY "
+                + "FROM APP.DAILY_SALES DS "
+                + "INNER JOIN APP.PRODUCT P ON P.PRODUCT_ID = DS.PRODUCT_ID "
+                + "WHERE P.PRODUCT_TYPE_ID IS NOT NULL"
+            + ") M "
+            + "GROUP BY M.SALES_MONTH, M.STATE_PROV_CD, M.PRODUCT_TYPE_ID";
+
+    private static final String INSERT_ALL_TYPES_SQL =
+            "INSERT INTO APP.MONTHLY_STATE_SALES (SALES_MONTH, STATE_PROV_CD, PRODUCT_TYPE_ID, QUANTITY) "
+            + "SELECT M.SALES_MONTH, M.STATE_PROV_CD, " + MonthlyStateSales.ALL_PRODUCT_TYPES + ", SUM(M.QUANTITY) "
+            + "FROM ("
+                + "SELECT " + MONTH_OF_DATE + " AS SALES_MONTH, DS.STATE_PROV_CD, DS.QUANTITY "
+                + "FROM APP.DAILY_SALES DS"
+            + ") M "
+            + "GROUP BY M.SALES_MONTH, M.STATE_PROV_CD";
+
+    private static final String UNITS_BY_STATE_QUERY =
+            "select "
+            + "m.quantity, "
+            + "m.stateProvCd "
+            + "from "
+            + "MonthlyStateSales m "
+            + "where "
+            + "m.salesMonth = :salesMonth and "
+            + "m.productTypeId = :productTypeId";
+
+    private MonthlyStateSalesRollup() {
+    }
+
+    /**
+     * Recomputes the whole rollup from DAILY_SALES.
+     */
+    public static void rebuild(EntityManager em) {
+        em.createNativeQuery(DELETE_SQL).executeUpdate();
+        em.createNativeQuery(INSERT_BY_TYPE_SQL).executeUpdate();
+        em.createNativeQuery(INSERT_ALL_TYPES_SQL).executeUpdate();
+    }
+
+    /**
+     * Adds the units of newly written DAILY_SALES rows to the rollup.
+     */
+    public static void merge(EntityManager em, List<DailySales> dailySales) {
+        //month -> product type -> state -> units
+        Map<Date, Map<Integer, Map<String, Long>>> deltas = new HashMap<>();
+        for (DailySales ds : dailySales) {
+            if (ds.getDate() == null || ds.getQuantity() == null) {
+                continue;
+            }
+            Map<Integer, Map<String, Long>> month = deltas.computeIfAbsent(monthOf(ds.getDate()), k -> new HashMap<>());
+            month.computeIfAbsent(MonthlyStateSales.ALL_PRODUCT_TYPES, k -> new HashMap<>())
+                    .merge(ds.getStateProvCd(), (long) ds.getQuantity(), Long::sum);
+            Product product = ds.getProduct();
+            if (product != null && product.getProductType() != null) {
+                month.computeIfAbsent(product.getProductType().getProductTypeId(), k -> new HashMap<>())
+                        .merge(ds.getStateProvCd(), (long) ds.getQuantity(), Long::sum);
+            }
+        }
+
+        TypedQuery<MonthlyStateSales> query = em.createNamedQuery("MonthlyStateSales.findBySalesMonth", MonthlyStateSales.class);
+        for (Map.Entry<Date, Map<Integer, Map<String, Long>>> month : deltas.entrySet()) {
+            query.setParameter("salesMonth", month.getKey());
+            Map<Integer, Map<String, MonthlyStateSales>> existing = new HashMap<>();
+            for (MonthlyStateSales mss : query.getResultList()) {
+                existing.computeIfAbsent(mss.getProductTypeId(), k -> new HashMap<>()).put(mss.getStateProvCd(), mss);
+            }
+            for (Map.Entry<Integer, Map<String, Long>> type : month.getValue().entrySet()) {
+                for (Map.Entry<String, Long> state : type.getValue().entrySet()) {
+                    MonthlyStateSales mss = existing.getOrDefault(type.getKey(), new HashMap<>()).get(state.getKey());
+                    if (mss == null) {
+                        mss = new MonthlyStateSales(month.getKey(), state.getKey(), type.getKey());
+                        em.persist(mss);
+                    }
+                    mss.setQuantity(mss.getQuantity() + state.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Query for the units per state of the month of the given date, as
+     * (quantity, state) rows. Pass {@link MonthlyStateSales#ALL_PRODUCT_TYPES}
+     * to get every product type.
+     */
+    public static TypedQuery<Object[]> createUnitsByStateQuery(EntityManager em, Date date, int productTypeId) {
+        TypedQuery<Object[]> query = em.createQuery(UNITS_BY_STATE_QUERY, Object[].class);
+        query.setParameter("salesMonth", monthOf(date));
+        query.setParameter("productTypeId", productTypeId);
+        return query;
+    }
+
+    /**
+     * The first day of the month of the given date, at midnight.
+     */
+    public static Date monthOf(Date date) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(date);
+        cal.set(Calendar.DAY_OF_MONTH, 1);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        return cal.getTime();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Draws product ids from categories of products with given weights, a
+ * category being drawn in proportion to its weight and then one of its
+ * products uniformly, in constant time with Walker's alias method.
+ * <p/>
+ * The table is built in Vose's variant: every column holds a product and the
+ * probability of drawing it rather than the column's alias, so a draw is one
+ * uniform column and one comparison.
+ */
+public final class ProductSampler {
+
+    private final int[] productIds;
+    private final double[] probability;
+    private final int[] alias;
+
+    /**
+     * @param categories the product ids of every category; a product may be in
+     *                   several categories
+     * @param weights    the weight of every category, none negative and at
+     *                   least one positive
+     */
+    public ProductSampler(List<List<Integer>> categories, double[] weights) {
+        if (categories.size() != weights.length) {
+            throw new IllegalArgumentException(categories.size() + " categories but " + weights.length + " weights");
+        }
+        //probability mass per product, ordered by id so the table only depends on the weights
+        Map<Integer, Double> mass = new TreeMap<>();
+        double total = 0;
+        for (int c = 0; c < weights.length; c++) {
+            if (weights[c] < 0) {
+                throw new IllegalArgumentException("Negative weight " + weights[c] + " of category " + c);
+            }
+            List<Integer> products = categories.get(c);
+            for (Integer productId : products) {
+                mass.merge(productId, weights[c] / products.size(), Double::sum);
+            }
+            total += weights[c];
+        }
+        if (!(total > 0)) {
+            throw new IllegalArgumentException("No category has a positive weight");
+        }
+
+        int n = mass.size();
+        productIds = new int[n];
+        probability = new double[n];
+        alias = new int[n];
+        double[] scaled = new double[n];
+        int i = 0;
+        for (Map.Entry<Integer, Double> product : mass.entrySet()) {
+            productIds[i] = product.getKey();
+            scaled[i] = product.getValue() * n / total;
+            i++;
+        }
+
+        List<Integer> small = new ArrayList<>();
+        List<Integer> large = new ArrayList<>();
+        for (i = 0; i < n; i++) {
+            (scaled[i] < 1 ? small : large).add(i);
+        }
+        while (!small.isEmpty() && !large.isEmpty()) {
+            int less = small.remove(small.size() - 1);
+            int more = large.remove(large.size() - 1);
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1;
+            (scaled[more] < 1 ? small : large).add(more);
+        }
+        //what is left is 1 up to rounding errors
+        for (int column : large) {
+            probability[column] = 1;
+        }
+        for (int column : small) {
+            probability[column] = 1;
+        }
+    }
+
+    public int sample(Random random) {
+        int column = random.nextInt(productIds.length);
+        return productIds[random.nextDouble() < probability[column] ? column : alias[column]];
+    }
+
+    /**
+     * Returns the probability that sample returns the product id.
+     */
+    public double probability(int productId) {
+        double p = 0;
+        for (int column = 0; column < productIds.length; column++) {
+            if (productIds[column] == productId) {
+                p += probability[column];
+            }
+            if (productIds[alias[column]] == productId) {
+                p += 1 - probability[column];
+            }
+        }
+        return p / productIds.length;
+    }
+}
@@ -36,11 +36,16 @@ import com.javafx.experiments.dataapp.model.*;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityTransaction;
 import javax.persistence.TypedQuery;
-import java.text.DateFormat;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class SalesSimulator implements Runnable {
-    private static final DateFormat DATE_FORMAT = DateFormat.getDateTimeInstance();
+    //thread-safe, as the partitions of the history are simulated in parallel
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.MEDIUM)
+            .withZone(ZoneId.systemDefault());
     //TODO: shove these constants into the database?
     //Percentage of sales, based on Ford's year end data
     //http://www.sec.gov/Archives/edgar/data/37996/000115752311001210/a6622311.htm
@@ -77,6 +82,10 @@ public class SalesSimulator implements Runnable {
     public static final List<Integer> US_UTILIYS = Arrays.asList(29, 30, 31, 32, 33, 34, 35, 36, 37, 38, 39, 40, 41);
     public static final List<Integer> US_PREMIUM_TRUCKS = Arrays.asList(56, 64, 42);
     public static final List<Integer> US_MED_HEAVY_TRUCKS = Arrays.asList(57, 58, 59, 60, 61, 62, 63, 64);
+    //the product categories in the order their percentages add up to one
+    public static final List<List<Integer>> US_CATEGORIES = Arrays.asList(US_SMALL_CARS, US_MEDIUM_CARS,
+            US_LARGE_CARS, US_PREMIUM_CARS, US_COMPACT_TRUCKS, US_BUS_VANS, US_FULL_SIZE_TRUCKS, US_UTILIYS,
+            US_PREMIUM_TRUCKS, US_MED_HEAVY_TRUCKS);
 
     public static final List<Integer> US_REGIONS = Arrays.asList(1, 2, 3, 4, 5, 6, 7);
 
@@ -85,7 +94,9 @@ public class SalesSimulator implements Runnable {
     public static final int FLEET_SALES_SIZE = 30;
     public static final double FLEET_SALES_PCT = (1.0 / 70.0);
 
-    private static List<ZipCityInfo> listOfZips;
+    private final List<ZipCityInfo> listOfZips;
+    //keyed by the postal codes of the generated addresses, so a live sale needs no parsing
+    private final Map<String, ZipCityInfo> zipsByPostalCode;
 
     //sell a car every 6.5 seconds
     public static final int TIME_BETWEEN_SALES = 6500;
@@ -94,19 +105,82 @@ public class SalesSimulator implements Runnable {
 
     private final List<Region> usRegions;
     private final List<Region> intlRegions;
+    private final ZipPrefixRegions usRegionsByZipPrefix;
 
     private final Random thisRandom;
+    //false for partitions, whose days would interleave with those of the others
+    private final boolean logDays;
+
+    //the current percentages as an alias table, rebuilt with every salesPctAdjustment
+    private ProductSampler usProductSampler;
+
+    private final List<LiveSalesListener> listeners = new CopyOnWriteArrayList<>();
+    //rows of the lines persisted by the current run(), published once committed
+    private final List<LiveSalesList> pendingLiveSales = new ArrayList<>();
 
     public SalesSimulator(EntityManager em) {
-        this.em = em;
-        thisRandom = new Random();
+        this(em, new Random());
+    }
 
-        listOfZips = em.createNamedQuery("ZipCityInfo.findAll", ZipCityInfo.class).getResultList();
+    public SalesSimulator(EntityManager em, Random random) {
+        this(em, random, ZipPrefixRegions.load(em));
+    }
+
+    /**
+     * Creates a simulator that assigns US sales to regions with the given
+     * table, which may be shared with other simulators.
+     */
+    public SalesSimulator(EntityManager em, Random random, ZipPrefixRegions usRegionsByZipPrefix) {
+        this.em = em;
+        thisRandom = random;
+        logDays = true;
+
+        //in zip order, so a seeded Random picks the same zips whatever order the database returns them in
+        listOfZips = new ArrayList<>(em.createNamedQuery("ZipCityInfo.findAll", ZipCityInfo.class).getResultList());
+        listOfZips.sort(Comparator.comparing(ZipCityInfo::getZip));
+        zipsByPostalCode = new HashMap<>();
+        for (ZipCityInfo zip : listOfZips) {
+            zipsByPostalCode.put(zip.zipToString(), zip);
+        }
 
         usRegions = new ArrayList<>();
         intlRegions = new ArrayList<>();
 
         generateRegionLists();
+        this.usRegionsByZipPrefix = usRegionsByZipPrefix;
+        usProductSampler = createUSProductSampler();
+    }
+
+    private SalesSimulator(SalesSimulator simulator, EntityManager em, Random random) {
+        this.em = em;
+        thisRandom = random;
+        logDays = false;
+        listOfZips = simulator.listOfZips;
+        zipsByPostalCode = simulator.zipsByPostalCode;
+        usRegions = simulator.usRegions;
+        intlRegions = simulator.intlRegions;
+        usRegionsByZipPrefix = simulator.usRegionsByZipPrefix;
+        //the mix of the first day, as run(start, end) only adjusts it on every following day
+        salesPctAdjustment();
+    }
+
+    /**
+     * Creates a simulator that persists through the given EntityManager and
+     * draws from the given Random, sharing the zip codes and regions of this
+     * one, so that several can simulate parts of the history in parallel. It
+     * starts with a sales mix of its own, and does not log every day it
+     * generates, as the days of parallel partitions interleave.
+     */
+    public SalesSimulator forPartition(EntityManager em, Random random) {
+        return new SalesSimulator(this, em, random);
+    }
+
+    public void addLiveSalesListener(LiveSalesListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeLiveSalesListener(LiveSalesListener listener) {
+        listeners.remove(listener);
     }
 
     private void generateRegionLists() {
@@ -125,14 +199,25 @@ public class SalesSimulator implements Runnable {
      */
     public void run() {
         EntityTransaction trx = em.getTransaction();
+        pendingLiveSales.clear();
         trx.begin();
         generate(new Date());
-        trx.commit();
         em.flush();
+        trx.commit();
+
+        if (pendingLiveSales.isEmpty()) {
+            return;
+        }
+        List<LiveSalesList> liveSales = Collections.unmodifiableList(new ArrayList<>(pendingLiveSales));
+        pendingLiveSales.clear();
+        for (LiveSalesListener listener : listeners) {
+            listener.liveSalesCommitted(liveSales);
+        }
     }
 
     /**
-     * Generate data for the time period between the two given dates
+     * Generate data for the time period from the start date up to, but not
+     * including, the end date
      * <p/>
      * This generates a large amount of sales and in the interest of time should
      * only be used with something such as the InitialLoadEntityManagerProxy that
@@ -142,11 +227,13 @@ public class SalesSimulator implements Runnable {
      * @param end   The date to stop generating
      */
     public void run(Date start, Date end) {
-        System.out.println("SalesSimulator:: generating sales from [" + DATE_FORMAT.format(start) + "] to [" + DATE_FORMAT.format(end) + "]");
+        System.out.println("SalesSimulator:: generating sales from [" + DATE_FORMAT.format(start.toInstant()) + "] to [" + DATE_FORMAT.format(end.toInstant()) + "]");
         // generate a sale every 6 seconds in the time range
         Calendar cal = Calendar.getInstance();
         cal.setTime(start);
-        System.out.println("        Generated data for the day: [" + DATE_FORMAT.format(cal.getTime()) + "]");
+        if (logDays) {
+            System.out.println("        Generated data for the day: [" + DATE_FORMAT.format(cal.getTime().toInstant()) + "]");
+        }
         int day = cal.get(Calendar.DAY_OF_YEAR);
         int hour = cal.get(Calendar.HOUR_OF_DAY);
         int year = cal.get(Calendar.YEAR);
@@ -160,6 +247,10 @@ public class SalesSimulator implements Runnable {
 
         while (time <= end.getTime()) {
             time += dailySalesRate;
+            if (time >= end.getTime()) {
+                //the sales from the end on belong to the next period
+                break;
+            }
 
             d = time;
             cal.setTimeInMillis(d.longValue());
@@ -172,7 +263,9 @@ public class SalesSimulator implements Runnable {
             }
             if (currentDay != day) {
                 day = currentDay;
-                System.out.println("        Generated data for the day: [" + DATE_FORMAT.format(cal.getTime()) + "]");
+                if (logDays) {
+                    System.out.println("        Generated data for the day: [" + DATE_FORMAT.format(cal.getTime().toInstant()) + "]");
+                }
 
                 dailySalesRate = (TIME_BETWEEN_SALES * (1 + salesRateAdjustment(d.longValue(), thisRandom)));
                 salesPctAdjustment();
@@ -229,6 +322,35 @@ public class SalesSimulator implements Runnable {
         usUtilityPct /= sum;
         usPremiumTruckPct /= sum;
         usMedHeavyTruckPct /= sum;
+
+        usProductSampler = createUSProductSampler();
+    }
+
+    /**
+     * Builds the alias table of the current percentages.
+     */
+    private ProductSampler createUSProductSampler() {
+        double[] pcts = {usSmallCarPct, usMediumCarPct, usLargeCarPct, usPremiumCarPct, usCompactTruckPct,
+                usBusVanPct, usFullsizePct, usUtilityPct, usPremiumTruckPct, usMedHeavyTruckPct};
+        return new ProductSampler(US_CATEGORIES, categoryWeights(pcts));
+    }
+
+    /**
+     * The weights of categories with the given percentages. They add up to
+     * one, but the noise can make some of them negative; a category gets the
+     * part of [0, 1) above the running sums of the categories before it, which
+     * is the product mix the percentages have always produced.
+     */
+    static double[] categoryWeights(double[] pcts) {
+        double[] weights = new double[pcts.length];
+        double sum = 0;
+        double covered = 0;
+        for (int i = 0; i < pcts.length; i++) {
+            sum += pcts[i];
+            weights[i] = Math.max(0, Math.min(sum, 1) - covered);
+            covered = Math.max(covered, sum);
+        }
+        return weights;
     }
 
     private static double salesRateAdjustment(long time, Random random) {
@@ -249,12 +371,11 @@ public class SalesSimulator implements Runnable {
     }
 
     private void generate(Date date) {
-        Random random = new Random();
-        if (random.nextDouble() < US_SALE_PCT) {
-            if (random.nextDouble() < FLEET_SALES_PCT) {
-                doFleetSale(random, date);
+        if (thisRandom.nextDouble() < US_SALE_PCT) {
+            if (thisRandom.nextDouble() < FLEET_SALES_PCT) {
+                doFleetSale(thisRandom, date);
             } else {
-                doSingleSale(random, date);
+                doSingleSale(thisRandom, date);
             }
         }
     }
@@ -290,6 +411,7 @@ public class SalesSimulator implements Runnable {
             orderLine.setProduct(em.find(Product.class, productId));
             orderLine.setQuantity(quantity);
             em.persist(orderLine);
+            recordLiveSale(orderLine);
 
             salesToGo -= quantity;
         }
@@ -343,72 +465,61 @@ public class SalesSimulator implements Runnable {
         orderLine.setProduct(em.find(Product.class, productId));
         orderLine.setQuantity(1);
         em.persist(orderLine);
+        recordLiveSale(orderLine);
     }
 
-    private Region getRegion(Address address) {
-        //TODO: just US 
-        String zipCode = address.getPostalCode();
-        int zipCodePrefix = Integer.parseInt(zipCode.substring(0, 2));
-        Region returnRegion = null;
-        for (Region r : usRegions) {
-            if (r.getStartZone() <= zipCodePrefix && r.getEndZone() >= zipCodePrefix) {
-                returnRegion = r;
-            }
+    /**
+     * Writes the LIVE_SALES_LIST row of a persisted order line in the same
+     * transaction, denormalized so the live queries need no joins. Only sales in
+     * domestic regions are listed.
+     */
+    private void recordLiveSale(SalesOrderLine orderLine) {
+        if (orderLine.getOrderLineId() == null) {
+            //not written to the database, as with the InitialLoadEntityManagerProxy
+            return;
+        }
+        SalesOrder order = orderLine.getOrder();
+        Region region = order.getRegion();
+        if (region == null || region.getInternational() != 0) {
+            return;
+        }
+        Product product = orderLine.getProduct();
+        ProductType productType = product.getProductType();
+        Address address = order.getCustomer().getAddress();
+        ZipCityInfo zip = zipsByPostalCode.get(address.getPostalCode());
+
+        LiveSalesList liveSale = new LiveSalesList();
+        liveSale.setOrderLineId(orderLine.getOrderLineId());
+        liveSale.setProduct(product.getName());
+        liveSale.setType(productType.getClass1());
+        liveSale.setSubType(productType.getSubclass());
+        liveSale.setPrice(product.getPrice());
+        liveSale.setRegion(region.getName());
+        liveSale.setChannel(order.getChannel());
+        liveSale.setQuantity(orderLine.getQuantity());
+        liveSale.setCity(address.getCity());
+        liveSale.setState(address.getStateProvCd());
+        if (zip != null) {
+            liveSale.setLatitude(zip.getLatitude());
+            liveSale.setLongitude(zip.getLongitude());
+        }
+        liveSale.setDate(order.getDate());
+        liveSale.setProductTypeId(productType.getProductTypeId());
+        em.persist(liveSale);
+        if (!listeners.isEmpty()) {
+            pendingLiveSales.add(liveSale);
         }
+    }
 
-        return returnRegion;
+    private Region getRegion(Address address) {
+        //TODO: just US 
+        return usRegionsByZipPrefix.forPostalCode(address.getPostalCode());
     }
 
     private int pickUSProduct(Random random) {
-        //nextDouble produces a value from 0 to 1.
-        //all the Pcts should sum to one, it selects the type of car
+        //selects the type of car by the current percentages
         //and then randomly selects one of the associated autos
-        double pick = random.nextDouble();
-        int i = 0;
-        if (pick <= usSmallCarPct) {
-            //small car
-            i = US_SMALL_CARS.get(random.nextInt(US_SMALL_CARS.size()));
-        } else if ((pick > usSmallCarPct) && (pick <= usSmallCarPct + usMediumCarPct)) {
-            //medium car
-            i = US_MEDIUM_CARS.get(random.nextInt(US_MEDIUM_CARS.size()));
-        } else if ((pick > usSmallCarPct + usMediumCarPct) && (pick <= usSmallCarPct + usMediumCarPct + usLargeCarPct)) {
-            //large car
-            i = US_LARGE_CARS.get(random.nextInt(US_LARGE_CARS.size()));
-        } else if ((pick > usSmallCarPct + usMediumCarPct + usLargeCarPct) &&
-                (pick <= usSmallCarPct + usMediumCarPct + usLargeCarPct + usPremiumCarPct)) {
-            //premium car
-            i = US_PREMIUM_CARS.get(random.nextInt(US_PREMIUM_CARS.size()));
-        } else if ((pick > usSmallCarPct + usMediumCarPct + usLargeCarPct + usPremiumCarPct) &&
-                (pick <= usSmallCarPct + usMediumCarPct + usLargeCarPct + usPremiumCarPct + usCompactTruckPct)) {
-            //compact truck
-            i = US_COMPACT_TRUCKS.get(random.nextInt(US_COMPACT_TRUCKS.size()));
-        } else if ((pick > usSmallCarPct + usMediumCarPct + usLargeCarPct + usPremiumCarPct + usCompactTruckPct) &&
-                (pick <= usSmallCarPct + usMediumCarPct + usLargeCarPct + usPremiumCarPct + usCompactTruckPct + usBusVanPct)) {
-            //bus van
-            i = US_BUS_VANS.get(random.nextInt(US_BUS_VANS.size()));
-        } else if ((pick > usSmallCarPct + usMediumCarPct + usLargeCarPct + usPremiumCarPct + usCompactTruckPct + usBusVanPct) &&
-                (pick <= usSmallCarPct + usMediumCarPct + usLargeCarPct + usPremiumCarPct + usCompactTruckPct + usBusVanPct + usFullsizePct)) {
-            //full size truck
-            i = US_FULL_SIZE_TRUCKS.get(random.nextInt(US_FULL_SIZE_TRUCKS.size()));
-        } else if ((pick > usSmallCarPct + usMediumCarPct + usLargeCarPct + usPremiumCarPct + usCompactTruckPct + usBusVanPct + usFullsizePct) &&
-                (pick <= usSmallCarPct + usMediumCarPct + usLargeCarPct + usPremiumCarPct + usCompactTruckPct + usBusVanPct + usFullsizePct + usUtilityPct)) {
-            //utility
-            i = US_UTILIYS.get(random.nextInt(US_UTILIYS.size()));
-        } else if ((pick > usSmallCarPct + usMediumCarPct + usLargeCarPct + usPremiumCarPct + usCompactTruckPct + usBusVanPct + usFullsizePct + usUtilityPct) &&
-                (pick <= usSmallCarPct + usMediumCarPct + usLargeCarPct + usPremiumCarPct + usCompactTruckPct + usBusVanPct + usFullsizePct + usUtilityPct + usPremiumTruckPct)) {
-            i = US_PREMIUM_TRUCKS.get(random.nextInt(US_PREMIUM_TRUCKS.size()));
-            //premium truck
-        } else if ((pick > usSmallCarPct + usMediumCarPct + usLargeCarPct + usPremiumCarPct + usCompactTruckPct + usBusVanPct + usFullsizePct + usUtilityPct + usPremiumTruckPct) &&
-                (pick <= usSmallCarPct + usMediumCarPct + usLargeCarPct + usPremiumCarPct + usCompactTruckPct + usBusVanPct + usFullsizePct + usUtilityPct + usPremiumTruckPct + usMedHeavyTruckPct)) {
-            //heavy truck
-            i = US_MED_HEAVY_TRUCKS.get(random.nextInt(US_MED_HEAVY_TRUCKS.size()));
-        }
-        if (i == 0) {
-            System.out.println(pick);
-            System.out.println("Sum of pick percentages did not go to 1!");
-        }
-
-        return i;
+        return usProductSampler.sample(random);
     }
 
     private char pickDiscountRateForFleet(Random random) {
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.simulation;
+
+import com.javafx.experiments.dataapp.model.Region;
+
+import javax.persistence.EntityManager;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The domestic Region of every two digit zip code prefix, looked up in an
+ * array instead of scanning the zones of all regions for every sale.
+ * <p/>
+ * Built once from the START_ZONE and END_ZONE of the regions and never
+ * changed afterwards, so one table can be shared by every simulator and any
+ * other code that assigns sales to regions by their postal code. Where zones
+ * overlap the region that comes last wins, as it did with the scan.
+ */
+public final class ZipPrefixRegions {
+
+    public static final int PREFIXES = 100;
+
+    private final Region[] regions = new Region[PREFIXES];
+
+    /**
+     * @param domesticRegions the regions to look up, in the order of
+     *                        Region.findAll
+     */
+    public ZipPrefixRegions(Collection<Region> domesticRegions) {
+        for (Region r : domesticRegions) {
+            for (int prefix = Math.max(r.getStartZone(), 0); prefix <= Math.min(r.getEndZone(), PREFIXES - 1); prefix++) {
+                regions[prefix] = r;
+            }
+        }
+    }
+
+    /**
+     * Loads the table from the regions that are not international, the ones
+     * the Region.findByZipCodePrefix query searches.
+     */
+    public static ZipPrefixRegions load(EntityManager em) {
+        List<Region> domesticRegions = em.createNamedQuery("Region.findByInternational", Region.class)
+                .setParameter("international", (short) 0)
+                .getResultList();
+        return new ZipPrefixRegions(domesticRegions);
+    }
+
+    /**
+     * Returns the region of the zip code prefix, null if no region covers it.
+     */
+    public Region get(int prefix) {
+        return prefix >= 0 && prefix < PREFIXES ? regions[prefix] : null;
+    }
+
+    /**
+     * Returns the region of a US postal code, null if it does not start with
+     * two digits or no region covers them.
+     */
+    public Region forPostalCode(CharSequence postalCode) {
+        return get(prefix(postalCode));
+    }
+
+    /**
+     * Returns the two digit zip code prefix of a postal code, -1 if it does
+     * not start with two digits.
+     */
+    public static int prefix(CharSequence postalCode) {
+        if (postalCode == null || postalCode.length() < 2) {
+            return -1;
+        }
+        int tens = postalCode.charAt(0) - '0';
+        int ones = postalCode.charAt(1) - '0';
+        if (tens < 0 || tens > 9 || ones < 0 || ones > 9) {
+            return -1;
+        }
+        return tens * 10 + ones;
+    }
+}
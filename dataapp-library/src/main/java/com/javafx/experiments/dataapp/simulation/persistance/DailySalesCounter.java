@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.simulation.persistance;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Counts the units sold per day, product, state and region in an open
+ * addressing hash table of packed long keys and int counts, so that counting
+ * a sale allocates nothing.
+ * <p/>
+ * From the most significant bit on, a key holds 0, the day since the epoch in
+ * the time zone of the counter (21 bits), the product id (16 bits), the state
+ * code as two letters from A to Z (10 bits) and the region id (16 bits, 0 for
+ * none). Keys in ascending order are thus ordered by day first.
+ */
+final class DailySalesCounter {
+
+    private static final long EMPTY = -1;
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private static final int DAY_BITS = 21;
+    private static final int PRODUCT_SHIFT = 26;
+    private static final int STATE_SHIFT = 16;
+    private static final int DAY_SHIFT = 42;
+    private static final int ID_MASK = 0xFFFF;
+    private static final int STATE_MASK = 0x3FF;
+
+    private static final int LETTERS = 26;
+    private static final int NO_STATE = LETTERS * LETTERS;
+    //the codes of decoded state indexes, filled on first use
+    private static final String[] STATES = new String[NO_STATE];
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final TimeZone zone;
+    private long[] keys;
+    private int[] counts;
+    private int size;
+
+    DailySalesCounter(TimeZone zone) {
+        this.zone = zone;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Adds units to the count of the day of the given time, the product, the
+     * state code and the region, 0 for none.
+     */
+    void add(long time, int productId, String state, int regionId, int units) {
+        add(key(dayOf(time), productId, stateIndex(state), regionId), units);
+    }
+
+    /**
+     * Adds the counts of another counter to the ones of this counter.
+     */
+    void addAll(DailySalesCounter other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != EMPTY) {
+                add(other.keys[i], other.counts[i]);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the counted keys in ascending order, so by day first.
+     */
+    long[] sortedKeys() {
+        long[] sorted = new long[size];
+        int n = 0;
+        for (long key : keys) {
+            if (key != EMPTY) {
+                sorted[n++] = key;
+            }
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Returns the units counted for the key, 0 if none were.
+     */
+    int get(long key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return counts[i];
+            }
+        }
+        return 0;
+    }
+
+    void clear() {
+        if (keys.length > INITIAL_CAPACITY) {
+            allocate(INITIAL_CAPACITY);
+        } else {
+            Arrays.fill(keys, EMPTY);
+            Arrays.fill(counts, 0);
+        }
+        size = 0;
+    }
+
+    /**
+     * Returns the first instant of the day of the key in the time zone of the
+     * counter.
+     */
+    Date dayStart(long key) {
+        return Date.from(LocalDate.ofEpochDay(day(key)).atStartOfDay(zone.toZoneId()).toInstant());
+    }
+
+    static int day(long key) {
+        return (int) (key >>> DAY_SHIFT);
+    }
+
+    static int productId(long key) {
+        return (int) (key >>> PRODUCT_SHIFT) & ID_MASK;
+    }
+
+    static String state(long key) {
+        int index = (int) (key >>> STATE_SHIFT) & STATE_MASK;
+        if (index == NO_STATE) {
+            return null;
+        }
+        String state = STATES[index];
+        if (state == null) {
+            state = new String(new char[]{(char) ('A' + index / LETTERS), (char) ('A' + index % LETTERS)});
+            STATES[index] = state;
+        }
+        return state;
+    }
+
+    static int regionId(long key) {
+        return (int) key & ID_MASK;
+    }
+
+    private int dayOf(long time) {
+        long day = Math.floorDiv(time + zone.getOffset(time), DAY_MILLIS);
+        if (day < 0 || day >= 1 << DAY_BITS) {
+            throw new IllegalArgumentException("Cannot count sales at " + time);
+        }
+        return (int) day;
+    }
+
+    private static int stateIndex(String state) {
+        if (state == null) {
+            return NO_STATE;
+        }
+        if (state.length() != 2 || !isLetter(state.charAt(0)) || !isLetter(state.charAt(1))) {
+            throw new IllegalArgumentException("Unsupported state code " + state);
+        }
+        return (state.charAt(0) - 'A') * LETTERS + state.charAt(1) - 'A';
+    }
+
+    private static boolean isLetter(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    private static long key(int day, int productId, int stateIndex, int regionId) {
+        if ((productId & ~ID_MASK) != 0 || (regionId & ~ID_MASK) != 0) {
+            throw new IllegalArgumentException("Cannot count product " + productId + " in region " + regionId);
+        }
+        return (long) day << DAY_SHIFT | (long) productId << PRODUCT_SHIFT | (long) stateIndex << STATE_SHIFT | regionId;
+    }
+
+    private void add(long key, int units) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (keys[i] != EMPTY) {
+            if (keys[i] == key) {
+                counts[i] += units;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        counts[i] = units;
+        //keep at least half of the slots free so probe sequences stay short
+        if (++size > keys.length / 2) {
+            grow();
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        allocate(oldKeys.length * 2);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                add(oldKeys[i], oldCounts[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        counts = new int[capacity];
+    }
+}
@@ -32,6 +32,7 @@
 package com.javafx.experiments.dataapp.simulation.persistance;
 
 import com.javafx.experiments.dataapp.model.*;
+import com.javafx.experiments.dataapp.simulation.DailySalesListener;
 
 import javax.persistence.*;
 import javax.persistence.criteria.CriteriaBuilder;
@@ -40,6 +41,7 @@ import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.CriteriaUpdate;
 import javax.persistence.metamodel.Metamodel;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * This class acts as a proxy for an entity manager and should ONLY be used on an
@@ -47,22 +49,54 @@ import java.util.*;
  * order lines in an accumulation that corresponds to an entry in the DailySales.
  * <p/>
  * Flush should be called at the end of every day, to insure that the ids generated
- * in the daily sales table are correct.
+ * in the daily sales table are correct. Registered {@link DailySalesListener}s
+ * are handed the rows written by every flush.
  * <p/>
  * This proxy is a bit of a hack but allows us to use the current Persistence heavy
  * framework of the SalesSimulator without changing the code.
+ * <p/>
+ * To generate the history in parallel, each partition of it is simulated into
+ * a {@link #collecting} proxy, whose flush writes nothing, and the partitions
+ * are then written in date order by {@link #writeDailySales}.
  */
 public class InitialLoadEntityManagerProxy implements EntityManager {
 
     private final EntityManager em;
 
     //Accumulates daily sales to be persisted out to the database.
-    private TreeMap<Date, HashMap<Product, HashMap<String, HashMap<Region, Integer>>>> dailySalesCounter;
+    private final DailySalesCounter dailySalesCounter = new DailySalesCounter(TimeZone.getDefault());
+
+    private final List<DailySalesListener> listeners = new CopyOnWriteArrayList<>();
+    //flushed but not committed yet, handed to the listeners by the commit
+    private final List<DailySales> uncommitted = new ArrayList<>();
+
+    //only counts the sales, flush() keeps them until they are written by another proxy
+    private final boolean collecting;
 
     public InitialLoadEntityManagerProxy(EntityManager em) {
+        this(em, false);
+    }
+
+    private InitialLoadEntityManagerProxy(EntityManager em, boolean collecting) {
         this.em = em;
+        this.collecting = collecting;
+    }
 
-        this.dailySalesCounter = new TreeMap<>();
+    /**
+     * Creates a proxy that only counts the daily sales of the sales order lines
+     * persisted through it; they are written by passing it to
+     * {@link #writeDailySales} of a writing proxy.
+     */
+    public static InitialLoadEntityManagerProxy collecting(EntityManager em) {
+        return new InitialLoadEntityManagerProxy(em, true);
+    }
+
+    public void addDailySalesListener(DailySalesListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeDailySalesListener(DailySalesListener listener) {
+        listeners.remove(listener);
     }
 
     @Override
@@ -74,62 +108,126 @@ public class InitialLoadEntityManagerProxy implements EntityManager {
 
     private void doBlackMagic(SalesOrderLine sol) {
         SalesOrder so = sol.getOrder();
-
-        //all we care about is the day the sale happened
-        Calendar cal = Calendar.getInstance();
-        cal.setTimeInMillis(so.getDate().getTime());
-        cal.set(Calendar.HOUR_OF_DAY, 0);
-        cal.set(Calendar.MINUTE, 0);
-        cal.set(Calendar.SECOND, 0);
-        cal.set(Calendar.MILLISECOND, 0);
-
-        Date date = cal.getTime();
-
-        if (!dailySalesCounter.containsKey(date)) {
-            dailySalesCounter.put(date, new HashMap<Product, HashMap<String, HashMap<Region, Integer>>>());
-        }
-        if (!dailySalesCounter.get(date).containsKey(sol.getProduct())) {
-            dailySalesCounter.get(date).put(sol.getProduct(), new HashMap<String, HashMap<Region, Integer>>());
-        }
-        if (!dailySalesCounter.get(date).get(sol.getProduct()).containsKey(so.getCustomer().getAddress().getStateProvCd())) {
-            dailySalesCounter.get(date).get(sol.getProduct()).put(so.getCustomer().getAddress().getStateProvCd(), new HashMap<Region, Integer>());
-        }
-        if (!dailySalesCounter.get(date).get(sol.getProduct()).get(so.getCustomer().getAddress().getStateProvCd()).containsKey(so.getRegion())) {
-            dailySalesCounter.get(date).get(sol.getProduct()).get(so.getCustomer().getAddress().getStateProvCd()).put(so.getRegion(), sol.getQuantity());
-        } else {
-            Integer quantity = dailySalesCounter.get(date).get(sol.getProduct()).get(so.getCustomer().getAddress().getStateProvCd()).put(so.getRegion(), sol.getQuantity());
-            quantity = quantity + sol.getQuantity();
-            dailySalesCounter.get(date).get(sol.getProduct()).get(so.getCustomer().getAddress().getStateProvCd()).put(so.getRegion(), quantity);
-        }
-    }
-
-    private void persistBlackMagic() {
-        for (Date date : dailySalesCounter.keySet()) {
-            for (Product product : dailySalesCounter.get(date).keySet()) {
-                for (String state : dailySalesCounter.get(date).get(product).keySet()) {
-                    for (Region region : dailySalesCounter.get(date).get(product).get(state).keySet()) {
-                        DailySales dailySales = new DailySales();
-                        dailySales.setRegion(region);
-                        dailySales.setProduct(product);
-                        dailySales.setStateProvCd(state);
-                        dailySales.setQuantity(dailySalesCounter.get(date).get(product).get(state).get(region));
-                        dailySales.setDate(date);
-                        em.persist(dailySales);
-                    }
-                }
+        Region region = so.getRegion();
+        dailySalesCounter.add(so.getDate().getTime(), sol.getProduct().getProductId(),
+                so.getCustomer().getAddress().getStateProvCd(), region == null ? 0 : region.getRegionId(),
+                sol.getQuantity());
+    }
+
+    private List<DailySales> persistBlackMagic() {
+        long[] keys = dailySalesCounter.sortedKeys();
+        List<DailySales> persisted = new ArrayList<>(keys.length);
+        //found once per flush, there are only a few dozen of them
+        Map<Integer, Product> products = new HashMap<>();
+        Map<Integer, Region> regions = new HashMap<>();
+        Date date = null;
+        for (int i = 0; i < keys.length; i++) {
+            long key = keys[i];
+            if (i == 0 || DailySalesCounter.day(key) != DailySalesCounter.day(keys[i - 1])) {
+                date = dailySalesCounter.dayStart(key);
+            }
+            int regionId = DailySalesCounter.regionId(key);
+            DailySales dailySales = new DailySales();
+            dailySales.setRegion(regionId == 0 ? null : regions.computeIfAbsent(regionId, id -> em.find(Region.class, id)));
+            dailySales.setProduct(products.computeIfAbsent(DailySalesCounter.productId(key), id -> em.find(Product.class, id)));
+            dailySales.setStateProvCd(DailySalesCounter.state(key));
+            dailySales.setQuantity(dailySalesCounter.get(key));
+            dailySales.setDate(date);
+            em.persist(dailySales);
+            persisted.add(dailySales);
+            if (i == keys.length - 1 || DailySalesCounter.day(key) != DailySalesCounter.day(keys[i + 1])) {
+                System.out.println(date);
             }
-            System.out.println(date);
         }
+        return persisted;
     }
 
     /* There is a huge assumption that the person calling this method knows what it is doing
      * Call every day and at the end of the day.
+     * The listeners get the flushed rows once the transaction of getTransaction() commits.
      */
     @Override
     public void flush() {
-        persistBlackMagic();
+        if (collecting) {
+            return;
+        }
+        List<DailySales> persisted = persistBlackMagic();
         em.flush();
-        dailySalesCounter = new TreeMap<>();
+        dailySalesCounter.clear();
+        uncommitted.addAll(persisted);
+    }
+
+    /**
+     * Writes the sales counted by a collecting proxy in one transaction, so a
+     * partition should not span more than a day, as with SalesSimulator.run.
+     * Partitions have to be written in date order too, so the ids of the daily
+     * sales follow their dates.
+     */
+    public void writeDailySales(InitialLoadEntityManagerProxy partition) {
+        dailySalesCounter.addAll(partition.dailySalesCounter);
+        partition.dailySalesCounter.clear();
+        EntityTransaction et = getTransaction();
+        et.begin();
+        flush();
+        et.commit();
+        em.clear();
+    }
+
+    private void committed() {
+        if (uncommitted.isEmpty()) {
+            return;
+        }
+        List<DailySales> persisted = new ArrayList<>(uncommitted);
+        uncommitted.clear();
+        for (DailySalesListener listener : listeners) {
+            listener.dailySalesCommitted(persisted);
+        }
+    }
+
+    /**
+     * The transaction of the EntityManager, which hands the daily sales flushed
+     * in it to the listeners only once it has committed, so they never see rows
+     * other readers cannot.
+     */
+    private final class ListenerTransaction implements EntityTransaction {
+        private final EntityTransaction et = em.getTransaction();
+
+        @Override
+        public void begin() {
+            et.begin();
+        }
+
+        @Override
+        public void commit() {
+            try {
+                et.commit();
+            } catch (RuntimeException e) {
+                uncommitted.clear();
+                throw e;
+            }
+            committed();
+        }
+
+        @Override
+        public void rollback() {
+            uncommitted.clear();
+            et.rollback();
+        }
+
+        @Override
+        public void setRollbackOnly() {
+            et.setRollbackOnly();
+        }
+
+        @Override
+        public boolean getRollbackOnly() {
+            return et.getRollbackOnly();
+        }
+
+        @Override
+        public boolean isActive() {
+            return et.isActive();
+        }
     }
 
 
@@ -306,7 +404,7 @@ public class InitialLoadEntityManagerProxy implements EntityManager {
 
     @Override
     public EntityTransaction getTransaction() {
-        return em.getTransaction();
+        return new ListenerTransaction();
     }
 
     @Override
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.simulation;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static com.javafx.experiments.dataapp.simulation.SalesSimulator.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the alias table the simulator draws US products from against the
+ * if-chain over the running sums of the percentages it replaced.
+ */
+public class ProductSamplerTest {
+
+    private static final double[] BASE_MIX = {US_SMALL_CAR_PCT, US_MEDIUM_CAR_PCT, US_LARGE_CAR_PCT,
+            US_PREMIUM_CAR_PCT, US_COMPACT_TRUCK_PCT, US_BUS_VAN_PCT, US_FULL_SIZE_TRUCK_PCT, US_UTILIY_PCT,
+            US_PREMIUM_TRUCK_PCT, US_MED_HEAVY_TRUCK_PCT};
+
+    //the noise of salesPctAdjustment can push a category below zero
+    private static final double[] NEGATIVE_MIX = {.16, .13, .09, .03, .04, -.06, .32, .27, .015, .005};
+
+    //and the running sum above one before the last category
+    private static final double[] OVERSHOOTING_MIX = {.1364, .1112, .0758, .0286, .0322, .0702, .6, -.1, .03, .0156};
+
+    private static final int DRAWS = 500000;
+
+    @Test
+    public void probabilityMatchesIfChain() {
+        for (double[] pcts : Arrays.asList(BASE_MIX, NEGATIVE_MIX, OVERSHOOTING_MIX)) {
+            ProductSampler sampler = new ProductSampler(US_CATEGORIES, categoryWeights(pcts));
+            Map<Integer, Double> expected = ifChainProductProbabilities(pcts);
+            double total = 0;
+            for (Map.Entry<Integer, Double> product : expected.entrySet()) {
+                assertEquals("product " + product.getKey() + " of " + Arrays.toString(pcts),
+                        product.getValue(), sampler.probability(product.getKey()), 1e-12);
+                total += sampler.probability(product.getKey());
+            }
+            assertEquals(1, total, 1e-12);
+        }
+    }
+
+    @Test
+    public void categoryWeightsMatchIfChain() {
+        for (double[] pcts : Arrays.asList(BASE_MIX, NEGATIVE_MIX, OVERSHOOTING_MIX)) {
+            double[] weights = categoryWeights(pcts);
+            double[] expected = ifChainCategoryProbabilities(pcts);
+            for (int c = 0; c < pcts.length; c++) {
+                assertTrue("negative weight " + weights[c], weights[c] >= 0);
+                assertEquals("category " + c + " of " + Arrays.toString(pcts), expected[c], weights[c], 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void drawsFollowBaseMix() {
+        assertDrawsFollow(BASE_MIX, new Random(42));
+    }
+
+    @Test
+    public void drawsFollowNegativeMix() {
+        assertDrawsFollow(NEGATIVE_MIX, new Random(43));
+    }
+
+    @Test
+    public void drawsFollowOvershootingMix() {
+        assertDrawsFollow(OVERSHOOTING_MIX, new Random(44));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeWeight() {
+        new ProductSampler(US_CATEGORIES, NEGATIVE_MIX);
+    }
+
+    /**
+     * Chi-square test of the draws against the product probabilities of the
+     * if-chain, at a significance of 0.001. The Random is seeded, so the test
+     * either always passes or always fails.
+     */
+    private static void assertDrawsFollow(double[] pcts, Random random) {
+        ProductSampler sampler = new ProductSampler(US_CATEGORIES, categoryWeights(pcts));
+        Map<Integer, Double> expected = ifChainProductProbabilities(pcts);
+        Map<Integer, Integer> counts = new TreeMap<>();
+        for (int i = 0; i < DRAWS; i++) {
+            counts.merge(sampler.sample(random), 1, Integer::sum);
+        }
+
+        double chiSquare = 0;
+        int cells = 0;
+        for (Map.Entry<Integer, Double> product : expected.entrySet()) {
+            double e = product.getValue() * DRAWS;
+            int observed = counts.getOrDefault(product.getKey(), 0);
+            if (e == 0) {
+                assertEquals("product " + product.getKey() + " has no weight but was drawn", 0, observed);
+                continue;
+            }
+            chiSquare += (observed - e) * (observed - e) / e;
+            cells++;
+        }
+        assertTrue("drew products outside the categories: " + counts.keySet(), expected.keySet().containsAll(counts.keySet()));
+        double limit = chiSquareQuantile(cells - 1, 3.0902);
+        assertTrue("chi-square " + chiSquare + " above " + limit + " for " + Arrays.toString(pcts), chiSquare < limit);
+    }
+
+    /**
+     * The Wilson-Hilferty approximation of the chi-square quantile with the
+     * given degrees of freedom at the given normal quantile.
+     */
+    private static double chiSquareQuantile(int df, double z) {
+        double a = 2.0 / (9 * df);
+        return df * Math.pow(1 - a + z * Math.sqrt(a), 3);
+    }
+
+    /**
+     * The probability of every product under the if-chain: its category picked
+     * with the chain's probability, then one of its products uniformly.
+     */
+    private static Map<Integer, Double> ifChainProductProbabilities(double[] pcts) {
+        double[] categories = ifChainCategoryProbabilities(pcts);
+        Map<Integer, Double> products = new TreeMap<>();
+        for (int c = 0; c < categories.length; c++) {
+            List<Integer> ids = US_CATEGORIES.get(c);
+            for (Integer id : ids) {
+                products.merge(id, categories[c] / ids.size(), Double::sum);
+            }
+        }
+        return products;
+    }
+
+    /**
+     * The exact probability of every category under the if-chain: [0, 1) is
+     * cut at every running sum, and each piece goes to the first branch of the
+     * chain its midpoint takes.
+     */
+    private static double[] ifChainCategoryProbabilities(double[] pcts) {
+        TreeSet<Double> cuts = new TreeSet<>(Arrays.asList(0.0, 1.0));
+        double sum = 0;
+        for (double pct : pcts) {
+            sum += pct;
+            cuts.add(Math.max(0, Math.min(1, sum)));
+        }
+        double[] probabilities = new double[pcts.length];
+        List<Double> points = new ArrayList<>(cuts);
+        for (int i = 1; i < points.size(); i++) {
+            double from = points.get(i - 1);
+            double to = points.get(i);
+            int category = ifChainCategory(pcts, (from + to) / 2);
+            if (category >= 0) {
+                probabilities[category] += to - from;
+            }
+        }
+        return probabilities;
+    }
+
+    private static int ifChainCategory(double[] pcts, double pick) {
+        double sum = 0;
+        for (int c = 0; c < pcts.length; c++) {
+            double previous = sum;
+            sum += pcts[c];
+            if (pick > previous && pick <= sum || c == 0 && pick <= sum) {
+                return c;
+            }
+        }
+        return -1;
+    }
+}
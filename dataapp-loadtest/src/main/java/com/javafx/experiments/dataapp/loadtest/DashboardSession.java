@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.loadtest;
+
+import com.javafx.experiments.dataapp.client.rest.CumulativeLiveSalesClient;
+import com.javafx.experiments.dataapp.client.rest.HeatMapClient;
+import com.javafx.experiments.dataapp.client.rest.LiveSalesViewClient;
+import com.javafx.experiments.dataapp.client.rest.ProductTypeClient;
+import com.javafx.experiments.dataapp.client.rest.RegionClient;
+import com.javafx.experiments.dataapp.model.LiveSalesList;
+import com.javafx.experiments.dataapp.model.ProductType;
+import com.javafx.experiments.dataapp.model.Region;
+import com.javafx.experiments.dataapp.model.transit.HeatMapQuantity;
+import com.javafx.experiments.dataapp.model.transit.HeatMapRange;
+import com.javafx.experiments.dataapp.model.transit.HistoryRangeSales;
+import com.javafx.experiments.dataapp.model.transit.TransitCumulativeSales;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * One simulated dashboard, making the requests the JavaFX client makes.
+ * <p/>
+ * On start it loads the regions and product types like DataApplication, then
+ * polls the live sales every 6 seconds like LiveDataFetcher, for as long as
+ * the session runs. In between, after a random think time, the user does
+ * something on one of the tabs, picked according to the TabMix:
+ * <ul>
+ *     <li>live: selects another region or product type, so the next poll
+ *     starts over with a fresh query</li>
+ *     <li>history: selects another time range and region, loading the
+ *     history timeline first if the tab has not been opened yet</li>
+ *     <li>heat: compares two other months or product types, loading the date
+ *     range first if the tab has not been opened yet</li>
+ * </ul>
+ */
+class DashboardSession {
+
+    static final long POLL_MILLIS = 6000;
+
+    private final LoadTestStats stats;
+    private final TabMix mix;
+    private final long meanThinkMillis;
+    private final ScheduledExecutorService scheduler;
+    private final Random random;
+
+    private Region[] regions = new Region[0];
+    private ProductType[] productTypes = new ProductType[0];
+
+    //live tab selection, changed by the user while the polls run
+    private volatile String regionName;
+    private volatile int productTypeId = -1;
+    private volatile int lastQuery = -1;
+
+    private CumulativeLiveSalesClient clsClient;
+    private TransitCumulativeSales[] timeline;
+    private HeatMapClient hmc;
+    private HeatMapRange heatMapRange;
+
+    DashboardSession(LoadTestStats stats, TabMix mix, long meanThinkMillis, ScheduledExecutorService scheduler, long seed) {
+        this.stats = stats;
+        this.mix = mix;
+        this.meanThinkMillis = meanThinkMillis;
+        this.scheduler = scheduler;
+        this.random = new Random(seed);
+    }
+
+    void start(long delayMillis) {
+        scheduler.schedule(guarded(this::open), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void open() {
+        Region[] american = call("region/american", () -> {
+            RegionClient regionClient = new RegionClient();
+            try {
+                return regionClient.findAmerican(Region[].class);
+            } finally {
+                regionClient.close();
+            }
+        });
+        if (american != null && american.length > 0) {
+            //DataApplication drops the last one, the territories
+            regions = Arrays.copyOfRange(american, 0, american.length - 1);
+        }
+        ProductType[] types = call("producttype", () -> {
+            ProductTypeClient ptClient = new ProductTypeClient();
+            try {
+                return ptClient.findAll(ProductType[].class);
+            } finally {
+                ptClient.close();
+            }
+        });
+        if (types != null) {
+            productTypes = types;
+        }
+        //the timeline skips a poll that is still running, so does a fixed delay
+        scheduler.scheduleWithFixedDelay(guarded(this::poll), 0, POLL_MILLIS, TimeUnit.MILLISECONDS);
+        scheduleInteraction();
+    }
+
+    private void scheduleInteraction() {
+        long thinkMillis = (long) (-meanThinkMillis * Math.log(1 - random.nextDouble()));
+        scheduler.schedule(() -> {
+            guarded(this::interact).run();
+            scheduleInteraction();
+        }, thinkMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Request failures are counted by {@link #call}; anything else, such as a
+     * client that cannot be created, would otherwise silently cancel the
+     * scheduled task and with it the session.
+     */
+    private Runnable guarded(Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                if (!scheduler.isShutdown()) {
+                    stats.sessionFailure(t);
+                }
+            }
+        };
+    }
+
+    private void interact() {
+        switch (mix.pick(random)) {
+            case LIVE:
+                selectLive();
+                break;
+            case HISTORY:
+                selectHistory();
+                break;
+            case HEAT:
+                selectHeat();
+                break;
+        }
+    }
+
+    /**
+     * Same requests as the task of LiveDataFetcher, including a new client
+     * per poll.
+     */
+    private void poll() {
+        final int lastQuery = this.lastQuery;
+        final boolean isFreshQuery = lastQuery == -1;
+        final String regionName = this.regionName;
+        final int productTypeID = this.productTypeId;
+        LiveSalesViewClient liveSalesClient = new LiveSalesViewClient();
+        LiveSalesList[] results;
+        try {
+            if ((regionName != null) && (productTypeID > 0)) {
+                results = isFreshQuery
+                        ? call("live/recent/region/producttype", () -> liveSalesClient.findRecentRegionProductType(LiveSalesList[].class, regionName, productTypeID))
+                        : call("live/recent/region/producttype/from", () -> liveSalesClient.findRecentRegionProductTypeFrom(LiveSalesList[].class, regionName, productTypeID, lastQuery));
+            } else if (regionName != null) {
+                results = isFreshQuery
+                        ? call("live/recent/region", () -> liveSalesClient.findRecentRegion(LiveSalesList[].class, regionName))
+                        : call("live/recent/region/from", () -> liveSalesClient.findRecentRegionFrom(LiveSalesList[].class, regionName, lastQuery));
+            } else if (productTypeID > 0) {
+                results = isFreshQuery
+                        ? call("live/recent/producttype", () -> liveSalesClient.findRecentProductType(LiveSalesList[].class, productTypeID))
+                        : call("live/recent/producttype/from", () -> liveSalesClient.findRecentProductTypeFrom(LiveSalesList[].class, productTypeID, lastQuery));
+            } else {
+                results = isFreshQuery
+                        ? call("live/recent", () -> liveSalesClient.findRecent(LiveSalesList[].class))
+                        : call("live/from", () -> liveSalesClient.findFrom(LiveSalesList[].class, lastQuery));
+            }
+        } finally {
+            liveSalesClient.close();
+        }
+        //newest first; only taken if the selection has not changed meanwhile
+        if (results != null && results.length > 0 && this.lastQuery == lastQuery) {
+            this.lastQuery = Math.max(lastQuery, results[0].getOrderLineId());
+        }
+    }
+
+    private void selectLive() {
+        regionName = regions.length == 0 || random.nextBoolean() ? null : regions[random.nextInt(regions.length)].getName();
+        productTypeId = productTypes.length == 0 || random.nextBoolean() ? -1 : productTypes[random.nextInt(productTypes.length)].getProductTypeId();
+        lastQuery = -1;
+    }
+
+    /**
+     * Picks a range of whole days out of the timeline, newest first like the
+     * one of the HistoryTabController, and one of the regions half of the
+     * time.
+     */
+    private void selectHistory() {
+        if (clsClient == null) {
+            clsClient = new CumulativeLiveSalesClient();
+        }
+        if (timeline == null) {
+            timeline = call("cumulative", () -> clsClient.findAll(TransitCumulativeSales[].class));
+            if (timeline == null || timeline.length == 0) {
+                timeline = null;
+                return;
+            }
+        }
+        int newest = random.nextInt(timeline.length);
+        int oldest = newest + random.nextInt(timeline.length - newest);
+        String from = Integer.toString(timeline[oldest].getStartDailySalesId());
+        String to = Integer.toString(timeline[newest].getEndDailySalesId());
+        if (regions.length == 0 || random.nextBoolean()) {
+            call("cumulative/history", () -> clsClient.findHistoryRange(HistoryRangeSales.class, from, to));
+        } else {
+            Integer regionId = regions[random.nextInt(regions.length)].getRegionId();
+            call("cumulative/history/region", () -> clsClient.findHistoryRange(HistoryRangeSales.class, from, to, regionId));
+        }
+    }
+
+    /**
+     * Compares two months of the range, for all product types or, a third of
+     * the time, for one product type each.
+     */
+    private void selectHeat() {
+        if (hmc == null) {
+            hmc = new HeatMapClient();
+        }
+        if (heatMapRange == null) {
+            heatMapRange = call("heatmap/range", () -> hmc.getDateRange(HeatMapRange.class));
+            if (heatMapRange == null || heatMapRange.getMinDate() == null) {
+                heatMapRange = null;
+                return;
+            }
+        }
+        Date compareMonth = randomMonth();
+        Date toMonth = randomMonth();
+        boolean byType = productTypes.length > 0 && random.nextInt(3) == 0;
+        int compareProductID = byType ? productTypes[random.nextInt(productTypes.length)].getProductTypeId() : -1;
+        int toProductID = byType ? productTypes[random.nextInt(productTypes.length)].getProductTypeId() : -1;
+        call(byType ? "heatmap/producttype" : "heatmap/producttype/all",
+                () -> hmc.getProductTypeHeatMap(HeatMapQuantity[].class, compareMonth, toMonth, compareProductID, toProductID));
+    }
+
+    private Date randomMonth() {
+        Calendar min = Calendar.getInstance();
+        min.setTime(heatMapRange.getMinDate());
+        Calendar max = Calendar.getInstance();
+        max.setTime(heatMapRange.getMaxDate());
+        int months = (max.get(Calendar.YEAR) - min.get(Calendar.YEAR)) * 12 + max.get(Calendar.MONTH) - min.get(Calendar.MONTH);
+        min.set(Calendar.DAY_OF_MONTH, 1);
+        min.add(Calendar.MONTH, random.nextInt(months + 1));
+        return min.getTime();
+    }
+
+    private <T> T call(String endpoint, Supplier<T> request) {
+        long start = System.nanoTime();
+        try {
+            T result = request.get();
+            stats.success(endpoint, System.nanoTime() - start);
+            return result;
+        } catch (RuntimeException e) {
+            stats.failure(endpoint, e);
+            return null;
+        }
+    }
+
+    void close() {
+        if (clsClient != null) {
+            clsClient.close();
+        }
+        if (hmc != null) {
+            hmc.close();
+        }
+    }
+}
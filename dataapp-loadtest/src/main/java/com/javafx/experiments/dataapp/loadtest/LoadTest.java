@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.loadtest;
+
+import com.javafx.experiments.dataapp.client.rest.RestClientFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless load generator: runs a number of simulated dashboard sessions
+ * against the server at RestClientFactory.SERVER_URI, set with
+ * -Ddataapp.server.uri, and reports throughput, latency and errors per
+ * endpoint.
+ * <p/>
+ * Settings, all system properties:
+ * <ul>
+ *     <li>dataapp.loadtest.sessions: concurrent dashboards, 50</li>
+ *     <li>dataapp.loadtest.durationSeconds: length of the run, 120</li>
+ *     <li>dataapp.loadtest.rampUpSeconds: over which the sessions are started, 10</li>
+ *     <li>dataapp.loadtest.thinkSeconds: mean time between two user actions, 15</li>
+ *     <li>dataapp.loadtest.mix: tab weights of the user actions, live=50,history=30,heat=20</li>
+ *     <li>dataapp.loadtest.seed: seed of the first session, 1</li>
+ * </ul>
+ * All sessions share the client connection pool, which unless
+ * dataapp.client.maxConnections is set gets two connections per session, so
+ * the requests of a session never queue for a connection.
+ */
+public class LoadTest {
+
+    private static final long REPORT_INTERVAL_SECONDS = 10;
+
+    public static void main(String[] args) throws InterruptedException {
+        int sessions = Integer.getInteger("dataapp.loadtest.sessions", 50);
+        int durationSeconds = Integer.getInteger("dataapp.loadtest.durationSeconds", 120);
+        int rampUpSeconds = Integer.getInteger("dataapp.loadtest.rampUpSeconds", 10);
+        int thinkSeconds = Integer.getInteger("dataapp.loadtest.thinkSeconds", 15);
+        TabMix mix = new TabMix(System.getProperty("dataapp.loadtest.mix", "live=50,history=30,heat=20"));
+        long seed = Long.getLong("dataapp.loadtest.seed", 1);
+        if (System.getProperty("dataapp.client.maxConnections") == null) {
+            System.setProperty("dataapp.client.maxConnections", Integer.toString(2 * sessions));
+        }
+
+        System.out.println("Load testing " + RestClientFactory.SERVER_URI + " with " + sessions + " sessions for "
+                + durationSeconds + "s, ramp up " + rampUpSeconds + "s, think time " + thinkSeconds + "s, tabs " + mix);
+
+        LoadTestStats stats = new LoadTestStats();
+        //the client calls block, so every session may need a thread for its poll and one for its user
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(2 * sessions);
+        List<DashboardSession> started = new ArrayList<>();
+        for (int i = 0; i < sessions; i++) {
+            DashboardSession session = new DashboardSession(stats, mix, thinkSeconds * 1000L, scheduler, seed + i);
+            session.start(rampUpSeconds * 1000L * i / sessions);
+            started.add(session);
+        }
+
+        long start = System.nanoTime();
+        long[] last = {0};
+        scheduler.scheduleAtFixedRate(() -> {
+            long requests = stats.getRequestCount();
+            System.out.println(String.format("%4ds %8d requests %8.1f req/s %6d errors",
+                    TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), requests,
+                    (requests - last[0]) / (double) REPORT_INTERVAL_SECONDS, stats.getFailureCount()));
+            last[0] = requests;
+        }, REPORT_INTERVAL_SECONDS, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+        Thread.sleep(durationSeconds * 1000L);
+        scheduler.shutdownNow();
+        scheduler.awaitTermination(30, TimeUnit.SECONDS);
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        for (DashboardSession session : started) {
+            session.close();
+        }
+
+        System.out.println();
+        System.out.print(stats.report(elapsedSeconds));
+        System.exit(0);
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.loadtest;
+
+import javax.ws.rs.WebApplicationException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latencies and errors of the requests of all sessions, per endpoint.
+ * <p/>
+ * Every latency is kept, so the percentiles are exact; a run of a few hours
+ * at a few hundred requests per second fits in well under 100MB.
+ */
+class LoadTestStats {
+
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    private static final class Endpoint {
+        private long[] latencies = new long[1024];
+        private int count;
+        private final Map<String, Integer> errors = new TreeMap<>();
+
+        synchronized void success(long nanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+
+        synchronized void failure(String error) {
+            errors.merge(error, 1, Integer::sum);
+        }
+
+        synchronized long[] sortedLatencies() {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        synchronized int errorCount() {
+            int n = 0;
+            for (int e : errors.values()) n += e;
+            return n;
+        }
+
+        synchronized String errorSummary() {
+            return errors.toString();
+        }
+    }
+
+    private final ConcurrentHashMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong sessionFailures = new AtomicLong();
+
+    void success(String endpoint, long nanos) {
+        endpoint(endpoint).success(nanos);
+        requests.incrementAndGet();
+    }
+
+    /**
+     * Errors are told apart by HTTP status, or by exception type when there
+     * is no response at all, such as a refused connection.
+     */
+    void failure(String endpoint, RuntimeException e) {
+        String error = e instanceof WebApplicationException
+                ? "HTTP " + ((WebApplicationException) e).getResponse().getStatus()
+                : e.getClass().getSimpleName();
+        endpoint(endpoint).failure(error);
+        requests.incrementAndGet();
+        failures.incrementAndGet();
+    }
+
+    /**
+     * A session task failed outside of a request. The first such failure is
+     * printed, as it is usually a setup problem that hits every session.
+     */
+    void sessionFailure(Throwable t) {
+        if (sessionFailures.getAndIncrement() == 0) {
+            System.err.println("Session failure, only the first one is printed:");
+            t.printStackTrace();
+        }
+    }
+
+    long getSessionFailureCount() {
+        return sessionFailures.get();
+    }
+
+    long getRequestCount() {
+        return requests.get();
+    }
+
+    long getFailureCount() {
+        return failures.get();
+    }
+
+    private Endpoint endpoint(String name) {
+        return endpoints.computeIfAbsent(name, n -> new Endpoint());
+    }
+
+    /**
+     * One line per endpoint: requests, throughput, latency percentiles of the
+     * successful requests in milliseconds, and the error rate.
+     */
+    String report(double elapsedSeconds) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-36s %9s %8s %9s %9s %9s %8s%n",
+                "endpoint", "requests", "req/s", "p50 ms", "p99 ms", "max ms", "errors"));
+        long total = 0;
+        long totalErrors = 0;
+        for (Map.Entry<String, Endpoint> e : new TreeMap<>(endpoints).entrySet()) {
+            long[] latencies = e.getValue().sortedLatencies();
+            int errors = e.getValue().errorCount();
+            long n = latencies.length + errors;
+            total += n;
+            totalErrors += errors;
+            sb.append(String.format("%-36s %9d %8.1f %9.1f %9.1f %9.1f %7.2f%%%n",
+                    e.getKey(), n, n / elapsedSeconds,
+                    percentile(latencies, 0.50), percentile(latencies, 0.99),
+                    latencies.length == 0 ? 0 : latencies[latencies.length - 1] / NANOS_PER_MILLI,
+                    n == 0 ? 0 : 100.0 * errors / n));
+            if (errors > 0) {
+                sb.append("    ").append(e.getValue().errorSummary()).append(String.format("%n"));
+            }
+        }
+        sb.append(String.format("%-36s %9d %8.1f %39.2f%%%n",
+                "total", total, total / elapsedSeconds, total == 0 ? 0 : 100.0 * totalErrors / total));
+        if (sessionFailures.get() > 0) {
+            sb.append(String.format("%d session tasks failed outside of a request%n", sessionFailures.get()));
+        }
+        return sb.toString();
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, rank)] / NANOS_PER_MILLI;
+    }
+}
@@ -31,9 +31,24 @@
  */
 package com.javafx.experiments.dataapp.server;
 
+import com.javafx.experiments.dataapp.server.aggregation.DailySalesCube;
+import com.javafx.experiments.dataapp.server.aggregation.DimensionRegistry;
+import com.javafx.experiments.dataapp.server.cache.ConditionalGetFilter;
+import com.javafx.experiments.dataapp.server.cache.DataVersion;
+import com.javafx.experiments.dataapp.server.cache.ResultCache;
+import com.javafx.experiments.dataapp.server.live.LiveSalesBroadcaster;
+import com.javafx.experiments.dataapp.server.live.RecentLiveSales;
+import com.javafx.experiments.dataapp.server.metrics.MetricsRegistry;
+import com.javafx.experiments.dataapp.server.metrics.RequestMetricsFilter;
+import com.javafx.experiments.dataapp.server.service.AdmissionController;
+import com.javafx.experiments.dataapp.server.service.RequestCoalescer;
+import com.javafx.experiments.dataapp.server.service.RequestLane;
+import com.javafx.experiments.dataapp.server.service.RequestLanes;
 import com.javafx.experiments.dataapp.simulation.DailySalesGenerator;
 import com.javafx.experiments.dataapp.simulation.SalesSimulator;
+import com.javafx.experiments.dataapp.simulation.ZipPrefixRegions;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
+import org.glassfish.jersey.media.sse.SseFeature;
 import org.glassfish.jersey.process.internal.RequestScoped;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.quartz.*;
@@ -51,6 +66,7 @@ import java.math.BigInteger;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 
 import static org.quartz.DateBuilder.IntervalUnit.MILLISECOND;
 import static org.quartz.DateBuilder.futureDate;
@@ -65,14 +81,42 @@ public class Application extends ResourceConfig implements ServletContextListene
     private static final String PU_NAME = "DataAppLibraryPU";
     private static EntityManagerFactory entityManagerFactory;
     private static Scheduler scheduler;
+    private static final DailySalesCube dailySalesCube = new DailySalesCube();
+    private static volatile DimensionRegistry dimensionRegistry;
+    //shared by the simulators of the history and of the live sales
+    private static volatile ZipPrefixRegions zipPrefixRegions;
+    private static final LiveSalesBroadcaster liveSalesBroadcaster = new LiveSalesBroadcaster();
+    private static final RecentLiveSales recentLiveSales = new RecentLiveSales();
+    private static final ResultCache resultCache = new ResultCache();
+    private static final DataVersion dataVersion = new DataVersion();
+    //followers wait no longer than the slow lane, which all coalesced requests run on
+    private static final RequestCoalescer requestCoalescer = new RequestCoalescer(
+            ServerConfig.getLaneTimeoutMillis(ServerConfig.SLOW_LANE));
+    private static final MetricsRegistry metricsRegistry = new MetricsRegistry();
+    private static volatile QueryExecutor queryExecutor;
+    private static volatile RequestLanes requestLanes;
 
     public Application() {
         packages("com.javafx.experiments.dataapp.server.service");
+        register(SseFeature.class);
+        register(ConditionalGetFilter.class);
+        register(RequestMetricsFilter.class);
         register(new AbstractBinder() {
             @Override
             protected void configure() {
                 bind(Application.this).to(EntityManagerFactoryHolder.class);
                 bindFactory(EMFactory.class).to(EntityManager.class).in(RequestScoped.class);
+                bind(dailySalesCube).to(DailySalesCube.class);
+                bind(liveSalesBroadcaster).to(LiveSalesBroadcaster.class);
+                bind(recentLiveSales).to(RecentLiveSales.class);
+                bind(resultCache).to(ResultCache.class);
+                bind(dataVersion).to(DataVersion.class);
+                bind(requestCoalescer).to(RequestCoalescer.class);
+                bind(metricsRegistry).to(MetricsRegistry.class);
+                //created by contextInitialized, which runs before the Jersey servlet is initialized
+                bind(dimensionRegistry).to(DimensionRegistry.class);
+                bind(queryExecutor).to(QueryExecutor.class);
+                bind(requestLanes).to(RequestLanes.class);
             }
         });
     }
@@ -80,16 +124,40 @@ public class Application extends ResourceConfig implements ServletContextListene
     @Override
     public void contextInitialized(ServletContextEvent sce) {
         entityManagerFactory = Persistence.createEntityManagerFactory(PU_NAME);
-        initDatabaseIfNeeded();
+        boolean created = initDatabaseIfNeeded();
+        loadDimensionRegistry();
+        loadZipPrefixRegions();
+        if (created) {
+            loadHistory();
+        } else {
+            loadDailySalesCube();
+        }
+        loadRecentLiveSales();
+        loadDataVersion();
+        startQueryExecutor();
+        startRequestLanes();
+        registerMetrics();
 
         System.out.println("Starting simulation");
         try {
+            DailySalesGenerator dailySalesGenerator = new DailySalesGenerator(entityManagerFactory.createEntityManager());
+            dailySalesGenerator.addDailySalesListener(dailySalesCube);
+            //after the cube, so cached results are only invalidated once it has the new rows
+            dailySalesGenerator.addDailySalesListener(resultCache);
+            dailySalesGenerator.addDailySalesListener(dataVersion);
+            //the live sales are only repeatable in as far as the simulator runs when scheduled
+            SalesSimulator salesSimulator = new SalesSimulator(entityManagerFactory.createEntityManager(),
+                    DataAppLoader.SIMULATION_SEED != null ? new Random(DataAppLoader.SIMULATION_SEED) : new Random(),
+                    zipPrefixRegions);
+            salesSimulator.addLiveSalesListener(recentLiveSales);
+            salesSimulator.addLiveSalesListener(liveSalesBroadcaster);
+
             scheduler = StdSchedulerFactory.getDefaultScheduler();
             scheduler.scheduleJob(
                     newJob(GeneralJob.class)
                         .usingJobData(
                                 new JobDataMap(
-                                        Collections.singletonMap("runnable", new SalesSimulator(entityManagerFactory.createEntityManager()))))
+                                        Collections.singletonMap("runnable", salesSimulator)))
                         .build(),
                     newTrigger()
                         .startAt(futureDate(SalesSimulator.TIME_BETWEEN_SALES, MILLISECOND))
@@ -102,7 +170,7 @@ public class Application extends ResourceConfig implements ServletContextListene
                     newJob(GeneralJob.class)
                         .usingJobData(
                                 new JobDataMap(
-                                        Collections.singletonMap("runnable", new DailySalesGenerator(entityManagerFactory.createEntityManager()))))
+                                        Collections.singletonMap("runnable", dailySalesGenerator)))
                         .build(),
                     newTrigger()
                         .startAt(futureDate(1000, MILLISECOND))
@@ -125,6 +193,13 @@ public class Application extends ResourceConfig implements ServletContextListene
         } catch (SchedulerException e) {
             e.printStackTrace();
         }
+        liveSalesBroadcaster.close();
+        if (queryExecutor != null) {
+            queryExecutor.shutdown();
+        }
+        if (requestLanes != null) {
+            requestLanes.shutdown();
+        }
 
         if (entityManagerFactory != null) {
             entityManagerFactory.close();
@@ -135,14 +210,23 @@ public class Application extends ResourceConfig implements ServletContextListene
         return entityManagerFactory;
     }
 
-    private static void initDatabaseIfNeeded() {
+    /**
+     * Creates the schema and the reference data if the database is empty, and
+     * upgrades the schema of an existing one otherwise.
+     *
+     * @return true if the database has been created, and so has no sales
+     *         history yet
+     */
+    private static boolean initDatabaseIfNeeded() {
         EntityManager em = entityManagerFactory.createEntityManager();
         BigInteger count = (BigInteger)em.createNativeQuery("SELECT COUNT(*) AS count FROM information_schema.tables WHERE table_name = 'ADDRESS'").getSingleResult();
 
         if (count.intValue() > 0) {
             System.out.println("Database already initialized");
+            //created by an earlier version of the server, whose schema may lack what this one needs
+            DatabaseUpgrade.upgrade(em);
             em.close();
-            return;
+            return false;
         }
 
         System.out.println("Initializing database");
@@ -150,7 +234,126 @@ public class Application extends ResourceConfig implements ServletContextListene
         Map<String, String> map = new HashMap<>();
         map.put("javax.persistence.schema-generation.database.action", "create");
         Persistence.generateSchema(PU_NAME, map);
-        DataAppLoader.loadAll(em);
+        DataAppLoader.loadReferenceData(em);
         em.close();
+        return true;
+    }
+
+    private static void loadDimensionRegistry() {
+        EntityManager em = entityManagerFactory.createEntityManager();
+        try {
+            dimensionRegistry = DimensionRegistry.load(em);
+        } finally {
+            em.close();
+        }
+    }
+
+    private static void loadZipPrefixRegions() {
+        EntityManager em = entityManagerFactory.createEntityManager();
+        try {
+            zipPrefixRegions = ZipPrefixRegions.load(em);
+        } finally {
+            em.close();
+        }
+    }
+
+    private static void loadHistory() {
+        EntityManager em = entityManagerFactory.createEntityManager();
+        try {
+            //the cube is filled day by day while the history is generated
+            dailySalesCube.reset(dimensionRegistry);
+            DataAppLoader.loadHistory(em, zipPrefixRegions, dailySalesCube);
+        } finally {
+            em.close();
+        }
+    }
+
+    private static void loadRecentLiveSales() {
+        EntityManager em = entityManagerFactory.createEntityManager();
+        try {
+            recentLiveSales.load(em);
+        } finally {
+            em.close();
+        }
+    }
+
+    private static void loadDataVersion() {
+        EntityManager em = entityManagerFactory.createEntityManager();
+        try {
+            dataVersion.load(em);
+        } finally {
+            em.close();
+        }
+    }
+
+    private static void startQueryExecutor() {
+        queryExecutor = new QueryExecutor(entityManagerFactory, ServerConfig.getQueryThreads(), ServerConfig.getQueryQueueCapacity());
+        System.out.println("Started " + queryExecutor.getStats());
+    }
+
+    private static void startRequestLanes() {
+        //only the aggregations are expensive enough to need admission control
+        AdmissionController admission = new AdmissionController(ServerConfig.getAdmissionInitialLimit(),
+                ServerConfig.getAdmissionMinLimit(), ServerConfig.getAdmissionMaxLimit(), ServerConfig.getAdmissionQueueCapacity());
+        requestLanes = new RequestLanes(requestLane(ServerConfig.FAST_LANE, null), requestLane(ServerConfig.SLOW_LANE, admission));
+        System.out.println("Started " + requestLanes.getFast().getStats());
+        System.out.println("Started " + requestLanes.getSlow().getStats());
+    }
+
+    private static RequestLane requestLane(String lane, AdmissionController admission) {
+        int timeoutMillis = ServerConfig.getLaneTimeoutMillis(lane);
+        return new RequestLane(
+                new QueryExecutor(lane, entityManagerFactory,
+                        ServerConfig.getLaneThreads(lane), ServerConfig.getLaneQueueCapacity(lane), timeoutMillis),
+                timeoutMillis, admission);
+    }
+
+    /**
+     * Exposes the counters the caches, lanes and the cube keep themselves
+     * through the MetricsRegistry.
+     */
+    private static void registerMetrics() {
+        metricsRegistry.counter("dataapp_cache_hits_total", resultCache::getHitCount);
+        metricsRegistry.counter("dataapp_cache_misses_total", resultCache::getMissCount);
+        metricsRegistry.counter("dataapp_cache_evictions_total", resultCache::getEvictionCount);
+        metricsRegistry.gauge("dataapp_cache_entries", resultCache::size);
+        metricsRegistry.counter("dataapp_coalescer_calls_total", requestCoalescer::getCallCount);
+        metricsRegistry.counter("dataapp_coalescer_executions_total", requestCoalescer::getExecutionCount);
+        metricsRegistry.counter("dataapp_cube_rows_scanned_total", dailySalesCube::getScannedRows);
+        metricsRegistry.gauge("dataapp_cube_rows", dailySalesCube::size);
+        registerMetrics(queryExecutor);
+        for (RequestLane lane : new RequestLane[]{requestLanes.getFast(), requestLanes.getSlow()}) {
+            registerMetrics(lane.getExecutor());
+            metricsRegistry.counter("dataapp_lane_timeouts_total", lane::getTimeoutCount, "executor", lane.getExecutor().getName());
+            AdmissionController admission = lane.getAdmission();
+            if (admission != null) {
+                String name = lane.getExecutor().getName();
+                metricsRegistry.gauge("dataapp_admission_limit", admission::getLimit, "executor", name);
+                metricsRegistry.gauge("dataapp_admission_in_flight", admission::getInFlight, "executor", name);
+                metricsRegistry.gauge("dataapp_admission_queued", admission::getQueueDepth, "executor", name);
+                metricsRegistry.counter("dataapp_admission_admitted_total", admission::getAdmittedCount, "executor", name);
+                metricsRegistry.counter("dataapp_admission_shed_total", admission::getShedCount, "executor", name);
+                metricsRegistry.counter("dataapp_admission_expired_total", admission::getExpiredCount, "executor", name);
+            }
+        }
+    }
+
+    private static void registerMetrics(QueryExecutor executor) {
+        String name = executor.getName();
+        metricsRegistry.gauge("dataapp_executor_active", executor::getActiveCount, "executor", name);
+        metricsRegistry.gauge("dataapp_executor_queued", executor::getQueueSize, "executor", name);
+        metricsRegistry.counter("dataapp_executor_completed_total", executor::getCompletedTaskCount, "executor", name);
+        metricsRegistry.counter("dataapp_executor_rejected_total", executor::getRejectedCount, "executor", name);
+        metricsRegistry.counter("dataapp_executor_caller_runs_total", executor::getCallerRunsCount, "executor", name);
+    }
+
+    private static void loadDailySalesCube() {
+        System.out.println("Loading daily sales cube");
+        EntityManager em = entityManagerFactory.createEntityManager();
+        try {
+            dailySalesCube.load(em, dimensionRegistry);
+        } finally {
+            em.close();
+        }
     }
 }
@@ -32,20 +32,49 @@
 package com.javafx.experiments.dataapp.server;
 
 import com.javafx.experiments.dataapp.model.*;
+import com.javafx.experiments.dataapp.simulation.DailySalesListener;
+import com.javafx.experiments.dataapp.simulation.MonthlyStateSalesRollup;
 import com.javafx.experiments.dataapp.simulation.SalesSimulator;
+import com.javafx.experiments.dataapp.simulation.SplitRandom;
+import com.javafx.experiments.dataapp.simulation.ZipPrefixRegions;
 import com.javafx.experiments.dataapp.simulation.persistance.InitialLoadEntityManagerProxy;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * DataAppLoader - generates all entity information and historical data
  */
-class DataAppLoader {
+public class DataAppLoader {
+
+    /** Threads simulating the sales history, -Ddataapp.history.parallelism, all processors by default. */
+    static final int HISTORY_PARALLELISM = Integer.getInteger("dataapp.history.parallelism",
+            Runtime.getRuntime().availableProcessors());
+
+    /** Seed of the simulated sales, -Ddataapp.simulation.seed, a different one on every run by default. */
+    static final Long SIMULATION_SEED = Long.getLong("dataapp.simulation.seed");
 
     static void loadAll(EntityManager entityManager) {
+        loadReferenceData(entityManager);
+        loadHistory(entityManager, ZipPrefixRegions.load(entityManager));
+    }
+
+    /**
+     * Loads everything but the sales history: regions, products and the other
+     * lookup tables.
+     */
+    public static void loadReferenceData(EntityManager entityManager) {
         EntityTransaction et = entityManager.getTransaction();
         et.begin();
 
@@ -70,15 +99,122 @@ class DataAppLoader {
         System.out.println("Loading products");
         loadProduct(entityManager);
         et.commit();
+    }
 
-        EntityManager specialEntityManager = new InitialLoadEntityManagerProxy(entityManager);
-        SalesSimulator simulator = new SalesSimulator(specialEntityManager);
+    /**
+     * Generates the DAILY_SALES history from the beginning of last year up to
+     * now, assigning the US sales to regions with the given table. The
+     * listeners are handed the rows of every simulated day as soon as they
+     * have been committed.
+     */
+    static void loadHistory(EntityManager entityManager, ZipPrefixRegions usRegionsByZipPrefix,
+            DailySalesListener... listeners) {
         Calendar cal = Calendar.getInstance();
         int year = cal.get(Calendar.YEAR);
         cal.clear();
         cal.set(year - 1, Calendar.JANUARY, 1, 0, 0, 0); // go back to beginning of year, 1 year ago
-        System.out.println("Creating historical data...");
-        simulator.run(cal.getTime(), new Date());
+        loadHistory(entityManager, cal.getTime(), new Date(), simulationSeed(), usRegionsByZipPrefix, listeners);
+    }
+
+    /**
+     * Generates the DAILY_SALES history between start and end with the seed
+     * of -Ddataapp.simulation.seed, or a random one if it is not set.
+     */
+    public static void loadHistory(EntityManager entityManager, Date start, Date end, DailySalesListener... listeners) {
+        loadHistory(entityManager, start, end, simulationSeed(), listeners);
+    }
+
+    private static long simulationSeed() {
+        return SIMULATION_SEED != null ? SIMULATION_SEED : new SplittableRandom().nextLong();
+    }
+
+    /**
+     * Generates the DAILY_SALES history between start and end and rebuilds
+     * the MONTHLY_STATE_SALES rollup from it.
+     * <p/>
+     * The range is split into days, which are simulated in parallel, each
+     * with its own generator and through its own EntityManager, and then
+     * written through the given EntityManager one at a time in date order, so
+     * the ids of the DAILY_SALES rows still follow their dates. At most twice
+     * as many days as there are threads are held in memory at a time.
+     * <p/>
+     * The generator of every day is split from the seed in date order, so
+     * into a new database the same seed and range write the same DAILY_SALES
+     * rows, ids included, with any number of threads.
+     */
+    public static void loadHistory(EntityManager entityManager, Date start, Date end, long seed,
+            DailySalesListener... listeners) {
+        loadHistory(entityManager, start, end, seed, ZipPrefixRegions.load(entityManager), listeners);
+    }
+
+    private static void loadHistory(EntityManager entityManager, Date start, Date end, long seed,
+            ZipPrefixRegions usRegionsByZipPrefix, DailySalesListener... listeners) {
+        InitialLoadEntityManagerProxy specialEntityManager = new InitialLoadEntityManagerProxy(entityManager);
+        for (DailySalesListener listener : listeners) {
+            specialEntityManager.addDailySalesListener(listener);
+        }
+        SplitRandom seeds = new SplitRandom(seed);
+        SalesSimulator simulator = new SalesSimulator(entityManager, seeds.split(), usRegionsByZipPrefix);
+        List<Date> bounds = dayBounds(start, end);
+        System.out.println("Creating historical data in " + (bounds.size() - 1) + " partitions on "
+                + HISTORY_PARALLELISM + " threads with seed " + seed + "...");
+        ForkJoinPool pool = new ForkJoinPool(HISTORY_PARALLELISM);
+        try {
+            Deque<ForkJoinTask<InitialLoadEntityManagerProxy>> pending = new ArrayDeque<>();
+            int next = 0;
+            while (next < bounds.size() - 1 || !pending.isEmpty()) {
+                while (next < bounds.size() - 1 && pending.size() < 2 * HISTORY_PARALLELISM) {
+                    pending.add(pool.submit(generatePartition(simulator, entityManager.getEntityManagerFactory(),
+                            bounds.get(next), bounds.get(next + 1), seeds.split())));
+                    next++;
+                }
+                specialEntityManager.writeDailySales(pending.remove().join());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        System.out.println("Building monthly state sales");
+        EntityTransaction et = entityManager.getTransaction();
+        et.begin();
+        MonthlyStateSalesRollup.rebuild(entityManager);
+        et.commit();
+    }
+
+    /**
+     * Returns start, the first instant of every day after it up to end, and
+     * end.
+     */
+    private static List<Date> dayBounds(Date start, Date end) {
+        List<Date> bounds = new ArrayList<>();
+        bounds.add(start);
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(start);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        cal.add(Calendar.DAY_OF_MONTH, 1);
+        while (cal.getTime().before(end)) {
+            bounds.add(cal.getTime());
+            cal.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        bounds.add(end);
+        return bounds;
+    }
+
+    private static Callable<InitialLoadEntityManagerProxy> generatePartition(SalesSimulator simulator,
+            EntityManagerFactory entityManagerFactory, Date start, Date end, SplitRandom random) {
+        return () -> {
+            EntityManager entityManager = entityManagerFactory.createEntityManager();
+            try {
+                InitialLoadEntityManagerProxy partition = InitialLoadEntityManagerProxy.collecting(entityManager);
+                simulator.forPartition(partition, random).run(start, end);
+                return partition;
+            } finally {
+                entityManager.close();
+            }
+        };
     }
 
     private static void loadDiscountRate(EntityManager entityManager) {
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.server;
+
+import com.javafx.experiments.dataapp.simulation.MonthlyStateSalesRollup;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Brings a database created by an earlier version of the server up to the
+ * schema of create-database.sql, keeping its data, as the default database
+ * ~/dataapp outlives the server it was created by.
+ * <p/>
+ * Every step first checks whether the database needs it, so upgrading a
+ * current database changes nothing. Tables and indexes are created with the
+ * statements of create-database.sql, one to a line.
+ */
+final class DatabaseUpgrade {
+
+    //sequence, table and id column of the entities with pooled sequence ids
+    private static final String[][] SEQUENCES = {
+            {"ADDRESS_SEQ", "ADDRESS", "ADDRESS_ID"},
+            {"CUSTOMER_SEQ", "CUSTOMER", "CUSTOMER_ID"},
+            {"SALES_ORDER_SEQ", "SALES_ORDER", "ORDER_ID"},
+            {"SALES_ORDER_LINE_SEQ", "SALES_ORDER_LINE", "ORDER_LINE_ID"},
+            {"DAILY_SALES_SEQ", "DAILY_SALES", "DAILY_SALES_ID"}};
+
+    //the allocationSize of their @SequenceGenerators
+    private static final int ALLOCATION_SIZE = 50;
+
+    private static final String CREATE_SCRIPT = "META-INF/create-database.sql";
+
+    //the rows of the LIVE_SALES_LIST view, which the simulator now writes to a table
+    private static final String COPY_LIVE_SALES_VIEW_SQL = "INSERT INTO APP.LIVE_SALES_LIST (ORDER_LINE_ID, PRODUCT, TYPE,"
+            + " SUBTYPE, PRICE, REGION, CHANNEL, QUANTITY, DEALER, SALESMAN, CITY, STATE, LATITUDE, LONGITUDE, DATE, PRODUCT_TYPE_ID)"
+            + " SELECT SOL.ORDER_LINE_ID, P.NAME, PT.CLASS, PT.SUBCLASS, P.PRICE, R.NAME, SO.CHANNEL, SOL.QUANTITY, D.NAME,"
+            + " E.LAST_NAME, A.CITY, A.STATE_PROV_CD, Z.LATITUDE, Z.LONGITUDE, SO.DATE, P.PRODUCT_TYPE_ID"
+            + " FROM APP.SALES_ORDER_LINE SOL LEFT OUTER JOIN APP.SALES_ORDER SO ON SO.ORDER_ID = SOL.ORDER_ID"
+            + " LEFT OUTER JOIN APP.REGION R ON R.REGION_ID = SO.REGION_ID LEFT OUTER JOIN APP.DEALER D ON SO.DEALER_ID = D.DEALER_ID"
+            + " LEFT OUTER JOIN APP.PRODUCT P ON P.PRODUCT_ID = SOL.PRODUCT_ID"
+            + " LEFT OUTER JOIN APP.PRODUCT_TYPE PT ON PT.PRODUCT_TYPE_ID = P.PRODUCT_TYPE_ID"
+            + " LEFT OUTER JOIN APP.EMPLOYEE E ON E.EMPLOYEE_ID = SO.EMPLOYEE_ID"
+            + " LEFT OUTER JOIN APP.CUSTOMER C ON C.CUSTOMER_ID = SO.CUSTOMER_ID"
+            + " LEFT OUTER JOIN APP.ADDRESS A ON A.ADDRESS_ID = C.ADDRESS_ID"
+            + " LEFT OUTER JOIN APP.ZIP_CITY_INFO Z ON Z.ZIP = CAST(A.POSTAL_CODE AS INTEGER) WHERE R.INTERNATIONAL = 0";
+
+    private DatabaseUpgrade() {
+    }
+
+    static void upgrade(EntityManager em) {
+        EntityTransaction et = em.getTransaction();
+        et.begin();
+        try {
+            createSequences(em);
+            createLiveSalesTable(em);
+            createMonthlyStateSales(em);
+            et.commit();
+        } finally {
+            if (et.isActive()) {
+                et.rollback();
+            }
+        }
+    }
+
+    /**
+     * Creates the id sequences of a database whose tables still have identity
+     * columns. A sequence starts a whole allocation past the highest id taken,
+     * as the pooled optimizer hands out the ids up to the value it gets.
+     */
+    private static void createSequences(EntityManager em) {
+        for (String[] sequence : SEQUENCES) {
+            if (sequenceExists(em, sequence[0])) {
+                continue;
+            }
+            Number maxId = (Number) em.createNativeQuery(
+                    "SELECT COALESCE(MAX(" + sequence[2] + "), 0) FROM APP." + sequence[1]).getSingleResult();
+            long start = maxId.longValue() + ALLOCATION_SIZE;
+            System.out.println("Upgrading database: creating sequence " + sequence[0] + " starting with " + start);
+            em.createNativeQuery("CREATE SEQUENCE APP." + sequence[0]
+                    + " START WITH " + start + " INCREMENT BY " + ALLOCATION_SIZE).executeUpdate();
+        }
+    }
+
+    /**
+     * Replaces the LIVE_SALES_LIST view by the table the simulator writes
+     * every sale to, filled with the rows of the view, and adds the index the
+     * DailySalesGenerator prunes the table by.
+     */
+    private static void createLiveSalesTable(EntityManager em) {
+        if ("VIEW".equals(tableType(em, "LIVE_SALES_LIST"))) {
+            System.out.println("Upgrading database: replacing the LIVE_SALES_LIST view by a table");
+            em.createNativeQuery("DROP VIEW APP.LIVE_SALES_LIST").executeUpdate();
+            //the table and all its indexes
+            executeScript(em, "APP.LIVE_SALES_LIST");
+            em.createNativeQuery(COPY_LIVE_SALES_VIEW_SQL).executeUpdate();
+        } else if (!indexExists(em, "LIVESALESDATEIDX")) {
+            System.out.println("Upgrading database: creating index LIVESALESDATEIDX");
+            executeScript(em, "INDEX LIVESALESDATEIDX ");
+        }
+    }
+
+    /**
+     * Creates the MONTHLY_STATE_SALES rollup the heat map is served from, and
+     * the DailySalesGenerator merges every new day into, and rolls up the
+     * DAILY_SALES history into it.
+     */
+    private static void createMonthlyStateSales(EntityManager em) {
+        if (tableType(em, "MONTHLY_STATE_SALES") == null) {
+            System.out.println("Upgrading database: building monthly state sales");
+            executeScript(em, "APP.MONTHLY_STATE_SALES");
+            MonthlyStateSalesRollup.rebuild(em);
+        }
+    }
+
+    /**
+     * Executes the statements of create-database.sql that contain the text.
+     */
+    private static void executeScript(EntityManager em, String text) {
+        for (String statement : scriptStatements()) {
+            if (statement.contains(text)) {
+                em.createNativeQuery(statement).executeUpdate();
+            }
+        }
+    }
+
+    private static List<String> scriptStatements() {
+        List<String> statements = new ArrayList<>();
+        InputStream in = DatabaseUpgrade.class.getClassLoader().getResourceAsStream(CREATE_SCRIPT);
+        if (in == null) {
+            throw new IllegalStateException(CREATE_SCRIPT + " not found");
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    statements.add(line.trim());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return statements;
+    }
+
+    /**
+     * Returns TABLE or VIEW, or null if there is neither with the name.
+     */
+    private static String tableType(EntityManager em, String name) {
+        List<?> types = em.createNativeQuery("SELECT TABLE_TYPE FROM INFORMATION_SCHEMA.TABLES"
+                + " WHERE TABLE_SCHEMA = 'APP' AND TABLE_NAME = '" + name + "'").getResultList();
+        return types.isEmpty() ? null : (String) types.get(0);
+    }
+
+    private static boolean indexExists(EntityManager em, String name) {
+        return count(em, "SELECT COUNT(*) FROM INFORMATION_SCHEMA.INDEXES"
+                + " WHERE TABLE_SCHEMA = 'APP' AND INDEX_NAME = '" + name + "'") > 0;
+    }
+
+    private static boolean sequenceExists(EntityManager em, String name) {
+        return count(em, "SELECT COUNT(*) FROM INFORMATION_SCHEMA.SEQUENCES"
+                + " WHERE SEQUENCE_SCHEMA = 'APP' AND SEQUENCE_NAME = '" + name + "'") > 0;
+    }
+
+    private static long count(EntityManager em, String sql) {
+        return ((Number) em.createNativeQuery(sql).getSingleResult()).longValue();
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.server;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.QueryTimeoutException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Bounded pool for running queries off the calling thread.
+ * <p/>
+ * EntityManagers are not thread safe, so every task gets an EntityManager of
+ * its own, closed when the task ends. If a query timeout is given, every query
+ * of the task is cancelled by H2 once it runs longer than that. When all
+ * threads are busy and the queue is full, {@link #submit} rejects the task
+ * while {@link #submitOrRun} runs it on the calling thread instead, which
+ * slows callers down rather than failing them.
+ */
+public class QueryExecutor {
+
+    private static final String QUERY_TIMEOUT_HINT = "javax.persistence.query.timeout";
+
+    private final String name;
+    private final EntityManagerFactory entityManagerFactory;
+    private final int queryTimeoutMillis;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong callerRuns = new AtomicLong();
+
+    public QueryExecutor(EntityManagerFactory entityManagerFactory, int threads, int queueCapacity) {
+        this("query", entityManagerFactory, threads, queueCapacity, 0);
+    }
+
+    public QueryExecutor(String name, EntityManagerFactory entityManagerFactory, int threads, int queueCapacity, int queryTimeoutMillis) {
+        this.name = name;
+        this.entityManagerFactory = entityManagerFactory;
+        this.queryTimeoutMillis = queryTimeoutMillis;
+        final AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "dataapp-" + name + "-" + threadNumber.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs the task on the pool with an EntityManager of its own.
+     *
+     * @throws RejectedExecutionException if the pool and its queue are full
+     */
+    public <T> Future<T> submit(Function<EntityManager, T> task) {
+        try {
+            return executor.submit(() -> run(task, queryTimeoutMillis));
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Like {@link #submit}, but runs the task on the calling thread if the
+     * pool is full.
+     */
+    public <T> Future<T> submitOrRun(Function<EntityManager, T> task) {
+        return submitOrRun(task, queryTimeoutMillis);
+    }
+
+    /**
+     * Like {@link #submitOrRun(Function)}, but with the query timeout of the
+     * caller, for tasks a request with a shorter timeout than this pool's
+     * hands off.
+     */
+    public <T> Future<T> submitOrRun(Function<EntityManager, T> task, int queryTimeoutMillis) {
+        try {
+            return executor.submit(() -> run(task, queryTimeoutMillis));
+        } catch (RejectedExecutionException e) {
+            callerRuns.incrementAndGet();
+            CompletableFuture<T> done = new CompletableFuture<>();
+            try {
+                done.complete(run(task, queryTimeoutMillis));
+            } catch (RuntimeException | Error t) {
+                done.completeExceptionally(t);
+            }
+            return done;
+        }
+    }
+
+    private <T> T run(Function<EntityManager, T> task, int queryTimeoutMillis) {
+        EntityManager em = entityManagerFactory.createEntityManager();
+        try {
+            if (queryTimeoutMillis > 0) {
+                em.setProperty(QUERY_TIMEOUT_HINT, queryTimeoutMillis);
+            }
+            return task.apply(em);
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Waits for a task, rethrowing what it threw.
+     */
+    public static <T> T await(Future<T> future) {
+        return await(future, 0);
+    }
+
+    /**
+     * Waits at most the given time for a task, rethrowing what it threw; a
+     * task that takes longer is cancelled. Zero waits for as long as it takes.
+     *
+     * @throws QueryTimeoutException if the task took too long
+     */
+    public static <T> T await(Future<T> future, long timeoutMillis) {
+        try {
+            return timeoutMillis > 0 ? future.get(timeoutMillis, TimeUnit.MILLISECONDS) : future.get();
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new QueryTimeoutException("Query took longer than " + timeoutMillis + "ms");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a query", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public int getQueueCapacity() {
+        return executor.getQueue().size() + executor.getQueue().remainingCapacity();
+    }
+
+    public long getCompletedTaskCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getCallerRunsCount() {
+        return callerRuns.get();
+    }
+
+    public int getQueryTimeoutMillis() {
+        return queryTimeoutMillis;
+    }
+
+    public String getStats() {
+        return name + ": threads=" + getThreads()
+                + " active=" + getActiveCount()
+                + " queued=" + getQueueSize() + "/" + getQueueCapacity()
+                + " completed=" + getCompletedTaskCount()
+                + " rejected=" + getRejectedCount()
+                + " callerRuns=" + getCallerRunsCount()
+                + (queryTimeoutMillis > 0 ? " queryTimeout=" + queryTimeoutMillis + "ms" : "");
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.server;
+
+/**
+ * Server settings, read from system properties so they can be given on the
+ * command line of the servlet container, e.g. -Ddataapp.query.threads=8.
+ */
+public final class ServerConfig {
+
+    /** Threads of the QueryExecutor, by default one per available processor. */
+    public static final String QUERY_THREADS = "dataapp.query.threads";
+
+    /** Tasks the QueryExecutor queues before callers run them themselves. */
+    public static final String QUERY_QUEUE_CAPACITY = "dataapp.query.queueCapacity";
+
+    /** Threads of a request lane, e.g. dataapp.lane.slow.threads. */
+    public static final String LANE_THREADS = "dataapp.lane.%s.threads";
+
+    /** Requests a lane queues before answering 503. */
+    public static final String LANE_QUEUE_CAPACITY = "dataapp.lane.%s.queueCapacity";
+
+    /** Milliseconds after which a lane answers 503 and cancels the queries of a request. */
+    public static final String LANE_TIMEOUT_MILLIS = "dataapp.lane.%s.timeoutMillis";
+
+    /** Concurrency limit the slow lane's admission controller starts from. */
+    public static final String ADMISSION_INITIAL_LIMIT = "dataapp.admission.initialLimit";
+
+    /** Bounds of the adaptive concurrency limit. */
+    public static final String ADMISSION_MIN_LIMIT = "dataapp.admission.minLimit";
+    public static final String ADMISSION_MAX_LIMIT = "dataapp.admission.maxLimit";
+
+    /** Requests waiting for admission before new ones are shed. */
+    public static final String ADMISSION_QUEUE_CAPACITY = "dataapp.admission.queueCapacity";
+
+    public static final String FAST_LANE = "fast";
+    public static final String SLOW_LANE = "slow";
+
+    private ServerConfig() {
+    }
+
+    public static int getQueryThreads() {
+        return positive(QUERY_THREADS, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static int getQueryQueueCapacity() {
+        return positive(QUERY_QUEUE_CAPACITY, 64);
+    }
+
+    public static int getLaneThreads(String lane) {
+        return positive(String.format(LANE_THREADS, lane),
+                FAST_LANE.equals(lane) ? 4 : Runtime.getRuntime().availableProcessors());
+    }
+
+    public static int getLaneQueueCapacity(String lane) {
+        return positive(String.format(LANE_QUEUE_CAPACITY, lane), FAST_LANE.equals(lane) ? 256 : 64);
+    }
+
+    public static int getLaneTimeoutMillis(String lane) {
+        return positive(String.format(LANE_TIMEOUT_MILLIS, lane), FAST_LANE.equals(lane) ? 5000 : 30000);
+    }
+
+    public static int getAdmissionInitialLimit() {
+        return positive(ADMISSION_INITIAL_LIMIT, getLaneThreads(SLOW_LANE) * 2);
+    }
+
+    public static int getAdmissionMinLimit() {
+        return positive(ADMISSION_MIN_LIMIT, 1);
+    }
+
+    public static int getAdmissionMaxLimit() {
+        return positive(ADMISSION_MAX_LIMIT, 64);
+    }
+
+    public static int getAdmissionQueueCapacity() {
+        return positive(ADMISSION_QUEUE_CAPACITY, 32);
+    }
+
+    private static int positive(String name, int defaultValue) {
+        int value = Integer.getInteger(name, defaultValue);
+        if (value <= 0) {
+            System.out.println("Ignoring " + name + "=" + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+        return value;
+    }
+}
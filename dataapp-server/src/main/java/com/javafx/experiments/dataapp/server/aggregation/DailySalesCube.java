@@ -0,0 +1,754 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.server.aggregation;
+
+import com.javafx.experiments.dataapp.model.DailySales;
+import com.javafx.experiments.dataapp.model.Product;
+import com.javafx.experiments.dataapp.model.Region;
+import com.javafx.experiments.dataapp.model.transit.HistoryRangeSales;
+import com.javafx.experiments.dataapp.model.transit.ProductTypeTransitCumulativeSeriesSales;
+import com.javafx.experiments.dataapp.model.transit.RegionTransitCumulativeSales;
+import com.javafx.experiments.dataapp.model.transit.StateTransitCumulativeSales;
+import com.javafx.experiments.dataapp.simulation.DailySalesListener;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory columnar copy of the DAILY_SALES table with a prefix-sum index.
+ * <p/>
+ * Every row is held as a slot in a set of primitive arrays ordered by
+ * dailySalesId. Alongside the rows the cube keeps running totals of units,
+ * cost and sales for every region/product type group and for every
+ * region/state pair. A copy of those running totals is kept every 2048 slots,
+ * so the totals of a {from}/{to} range are the difference of two checkpoints
+ * plus a scan of the few slots between the range bounds and the nearest
+ * checkpoints. Daily unit totals per group are kept as well, so the sales
+ * series only has to look at the days covered by the range.
+ * <p/>
+ * The cube is either filled while the initial load flushes its rows or loaded
+ * from H2 at startup, and is then kept current by registering it as a
+ * {@link DailySalesListener} on the DailySalesGenerator. There is a single
+ * writer; readers never block and always work on a consistent snapshot.
+ */
+public class DailySalesCube implements RangeAggregator, DailySalesListener {
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final int LOAD_PAGE_SIZE = 50000;
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    private static final int BLOCK_SHIFT = 11;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+    private static final String LOAD_QUERY =
+            "select hs.dailySalesId, "
+                + "hs.date, "
+                + "p.productId, "
+                + "r.regionId, "
+                + "hs.stateProvCd, "
+                + "hs.quantity "
+            + "from DailySales hs "
+            + "left join hs.product p "
+            + "left join hs.region r "
+            + "where hs.dailySalesId > :lastId "
+            + "order by hs.dailySalesId";
+
+    /**
+     * Units, cost, sales and row counts per slot of a grouping.
+     */
+    private static final class Totals {
+        long[] units;
+        double[] cost;
+        double[] sales;
+        int[] rows;
+
+        Totals(int length) {
+            units = new long[length];
+            cost = new double[length];
+            sales = new double[length];
+            rows = new int[length];
+        }
+
+        void ensureLength(int length) {
+            if (length > rows.length) {
+                int newLength = Math.max(length, rows.length * 2);
+                units = Arrays.copyOf(units, newLength);
+                cost = Arrays.copyOf(cost, newLength);
+                sales = Arrays.copyOf(sales, newLength);
+                rows = Arrays.copyOf(rows, newLength);
+            }
+        }
+
+        void add(int slot, int quantity, double unitCost, double unitPrice) {
+            units[slot] += quantity;
+            cost[slot] += quantity * unitCost;
+            sales[slot] += quantity * unitPrice;
+            rows[slot]++;
+        }
+
+        void add(Totals other, int sign) {
+            for (int i = 0, n = Math.min(rows.length, other.rows.length); i < n; i++) {
+                units[i] += sign * other.units[i];
+                cost[i] += sign * other.cost[i];
+                sales[i] += sign * other.sales[i];
+                rows[i] += sign * other.rows[i];
+            }
+        }
+
+        Totals copy() {
+            Totals t = new Totals(0);
+            t.units = units.clone();
+            t.cost = cost.clone();
+            t.sales = sales.clone();
+            t.rows = rows.clone();
+            return t;
+        }
+    }
+
+    /**
+     * Running totals of the slots before a block boundary.
+     */
+    private static final class Checkpoint {
+        final Totals groups;
+        final Totals pairs;
+
+        Checkpoint(Totals groups, Totals pairs) {
+            this.groups = groups;
+            this.pairs = pairs;
+        }
+    }
+
+    /**
+     * Unit totals per group for a single day. Once published a rollup is never
+     * changed again; the writer works on a copy when more rows arrive for
+     * the day.
+     */
+    private static final class DayRollup {
+        final int day;
+        final long[] units;
+        final int[] rows;
+        int first;
+        int last;
+        int batch;
+
+        DayRollup(int day, int groupCount) {
+            this.day = day;
+            this.units = new long[groupCount];
+            this.rows = new int[groupCount];
+        }
+
+        DayRollup(DayRollup other) {
+            this.day = other.day;
+            this.units = other.units.clone();
+            this.rows = other.rows.clone();
+            this.first = other.first;
+            this.last = other.last;
+        }
+    }
+
+    /**
+     * Immutable view of the cube handed to readers. Only slots below size,
+     * pairs below pairCount, checkpoints up to size / BLOCK_SIZE and rollups
+     * below dayCount are valid; the writer may fill entries past them in the
+     * same arrays before publishing the next snapshot.
+     */
+    private static final class Snapshot {
+        final DimensionRegistry dimensions;
+        final int size;
+        final int[] ids;
+        final int[] days;
+        final int[] products;
+        final int[] quantities;
+        final short[] groups;
+        final short[] pairs;
+        final int pairCount;
+        final byte[] pairRegions;
+        final byte[] pairStates;
+        final String[] stateCodes;
+        final Checkpoint[] checkpoints;
+        final int dayCount;
+        final DayRollup[] dayRollups;
+        final boolean daysInOrder;
+
+        Snapshot(Writer w) {
+            this.dimensions = w.dimensions;
+            this.size = w.size;
+            this.ids = w.ids;
+            this.days = w.days;
+            this.products = w.products;
+            this.quantities = w.quantities;
+            this.groups = w.groups;
+            this.pairs = w.pairs;
+            this.pairCount = w.pairCount;
+            this.pairRegions = w.pairRegions;
+            this.pairStates = w.pairStates;
+            this.stateCodes = w.stateCodes;
+            this.checkpoints = w.checkpoints;
+            this.dayCount = w.dayCount;
+            this.dayRollups = w.dayRollups;
+            this.daysInOrder = w.daysInOrder;
+        }
+    }
+
+    /**
+     * Appends rows and maintains the index. Only used while holding the
+     * monitor of the cube.
+     */
+    private static final class Writer {
+        final DimensionRegistry dimensions;
+        final int typeCount;
+        final int groupCount;
+        final Map<String, Integer> stateIndex = new HashMap<>();
+        final Map<Integer, Integer> pairIndex = new HashMap<>();
+        final Map<Integer, Integer> dayIndex = new HashMap<>();
+        final Totals runningGroups;
+        final Totals runningPairs = new Totals(16);
+
+        int size;
+        int[] ids = new int[INITIAL_CAPACITY];
+        int[] days = new int[INITIAL_CAPACITY];
+        int[] products = new int[INITIAL_CAPACITY];
+        int[] quantities = new int[INITIAL_CAPACITY];
+        short[] groups = new short[INITIAL_CAPACITY];
+        short[] pairs = new short[INITIAL_CAPACITY];
+        int pairCount;
+        byte[] pairRegions = new byte[16];
+        byte[] pairStates = new byte[16];
+        String[] stateCodes = {null};
+        Checkpoint[] checkpoints = new Checkpoint[64];
+        int dayCount;
+        DayRollup[] dayRollups = new DayRollup[64];
+        int batch;
+        boolean dayRollupsCopied;
+        //no row has an earlier day than the row before it, so the slots of every day are contiguous
+        boolean daysInOrder = true;
+
+        Writer(DimensionRegistry dimensions) {
+            if (dimensions.regionSlots() > Byte.MAX_VALUE + 1) {
+                throw new IllegalStateException("Region ids above " + Byte.MAX_VALUE + " are not supported by the cube");
+            }
+            if (dimensions.regionSlots() * dimensions.productTypeSlots() > Short.MAX_VALUE) {
+                throw new IllegalStateException("Too many region and product type combinations for the cube");
+            }
+            this.dimensions = dimensions;
+            this.typeCount = dimensions.productTypeSlots();
+            this.groupCount = dimensions.regionSlots() * typeCount;
+            this.runningGroups = new Totals(groupCount);
+            checkpoints[0] = new Checkpoint(new Totals(0), new Totals(0));
+        }
+
+        int lastId() {
+            return size == 0 ? Integer.MIN_VALUE : ids[size - 1];
+        }
+
+        void append(int id, Date date, Integer productId, Integer regionId, String state, Integer quantity) {
+            if (size == ids.length) {
+                int capacity = size + (size >> 1);
+                ids = Arrays.copyOf(ids, capacity);
+                days = Arrays.copyOf(days, capacity);
+                products = Arrays.copyOf(products, capacity);
+                quantities = Arrays.copyOf(quantities, capacity);
+                groups = Arrays.copyOf(groups, capacity);
+                pairs = Arrays.copyOf(pairs, capacity);
+            }
+
+            int product = productId == null ? 0 : productId;
+            int region = regionId == null || regionId < 0 || regionId >= dimensions.regionSlots() ? 0 : regionId;
+            int q = quantity == null ? 0 : quantity;
+            int day = date == null ? Integer.MIN_VALUE : toDay(date);
+            int group = region * typeCount + dimensions.productTypeIdOf(product);
+            int pair = pairSlot(region, stateSlot(state));
+            double unitCost = dimensions.costOf(product);
+            double unitPrice = dimensions.priceOf(product);
+
+            int slot = size++;
+            if (slot > 0 && day < days[slot - 1]) {
+                daysInOrder = false;
+            }
+            ids[slot] = id;
+            days[slot] = day;
+            products[slot] = product;
+            quantities[slot] = q;
+            groups[slot] = (short) group;
+            pairs[slot] = (short) pair;
+
+            runningGroups.add(group, q, unitCost, unitPrice);
+            runningPairs.add(pair, q, unitCost, unitPrice);
+
+            DayRollup rollup = rollupFor(day, slot);
+            rollup.units[group] += q;
+            rollup.rows[group]++;
+            rollup.last = slot;
+
+            if ((size & (BLOCK_SIZE - 1)) == 0) {
+                int k = size >> BLOCK_SHIFT;
+                if (k == checkpoints.length) {
+                    checkpoints = Arrays.copyOf(checkpoints, k * 2);
+                }
+                checkpoints[k] = new Checkpoint(runningGroups.copy(), runningPairs.copy());
+            }
+        }
+
+        Snapshot publish() {
+            batch++;
+            dayRollupsCopied = false;
+            return new Snapshot(this);
+        }
+
+        private int stateSlot(String state) {
+            if (state == null) {
+                return 0;
+            }
+            Integer slot = stateIndex.get(state);
+            if (slot == null) {
+                if (stateCodes.length > Byte.MAX_VALUE) {
+                    throw new IllegalStateException("Too many distinct states for the cube");
+                }
+                slot = stateCodes.length;
+                stateCodes = Arrays.copyOf(stateCodes, slot + 1);
+                stateCodes[slot] = state;
+                stateIndex.put(state, slot);
+            }
+            return slot;
+        }
+
+        private int pairSlot(int region, int stateSlot) {
+            Integer slot = pairIndex.get((region << 8) | stateSlot);
+            if (slot == null) {
+                if (pairCount == Short.MAX_VALUE) {
+                    throw new IllegalStateException("Too many region and state combinations for the cube");
+                }
+                slot = pairCount++;
+                if (slot == pairRegions.length) {
+                    pairRegions = Arrays.copyOf(pairRegions, slot * 2);
+                    pairStates = Arrays.copyOf(pairStates, slot * 2);
+                }
+                pairRegions[slot] = (byte) region;
+                pairStates[slot] = (byte) stateSlot;
+                runningPairs.ensureLength(pairCount);
+                pairIndex.put((region << 8) | stateSlot, slot);
+            }
+            return slot;
+        }
+
+        private DayRollup rollupFor(int day, int slot) {
+            Integer position = dayIndex.get(day);
+            if (position == null) {
+                if (dayCount == dayRollups.length) {
+                    dayRollups = Arrays.copyOf(dayRollups, dayCount * 2);
+                }
+                DayRollup rollup = new DayRollup(day, groupCount);
+                rollup.first = slot;
+                rollup.batch = batch;
+                dayIndex.put(day, dayCount);
+                dayRollups[dayCount++] = rollup;
+                return rollup;
+            }
+            DayRollup rollup = dayRollups[position];
+            if (rollup.batch != batch) {
+                //published rollups are shared with readers, replace them with a copy
+                if (!dayRollupsCopied) {
+                    dayRollups = dayRollups.clone();
+                    dayRollupsCopied = true;
+                }
+                rollup = new DayRollup(rollup);
+                rollup.batch = batch;
+                dayRollups[position] = rollup;
+            }
+            return rollup;
+        }
+    }
+
+    private volatile Snapshot snapshot;
+    private volatile boolean loaded;
+
+    //only touched while holding the monitor
+    private Writer writer;
+
+    private final LongAdder scannedRows = new LongAdder();
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Number of rows read one by one while answering queries, that is the
+     * rows not covered by a checkpoint or a day rollup.
+     */
+    public long getScannedRows() {
+        return scannedRows.sum();
+    }
+
+    public int size() {
+        Snapshot s = snapshot;
+        return s == null ? 0 : s.size;
+    }
+
+    /**
+     * Loads every DAILY_SALES row, replacing any previous contents of the
+     * cube.
+     */
+    public synchronized void load(EntityManager em, DimensionRegistry dimensions) {
+        long START_TIME = System.currentTimeMillis();
+        loaded = false;
+        writer = new Writer(dimensions);
+        snapshot = writer.publish();
+
+        TypedQuery<Object[]> q = em.createQuery(LOAD_QUERY, Object[].class);
+        q.setMaxResults(LOAD_PAGE_SIZE);
+        List<Object[]> page;
+        do {
+            q.setParameter("lastId", writer.lastId());
+            page = q.getResultList();
+            for (Object[] o : page) {
+                writer.append((Integer) o[0], (Date) o[1], (Integer) o[2], (Integer) o[3], (String) o[4], (Integer) o[5]);
+            }
+            snapshot = writer.publish();
+            em.clear();
+        } while (page.size() == LOAD_PAGE_SIZE);
+
+        loaded = true;
+        System.out.println("DailySalesCube loaded " + snapshot.size + " rows in " + (System.currentTimeMillis() - START_TIME) + "ms");
+    }
+
+    /**
+     * Empties the cube, so that it can be filled through
+     * {@link #dailySalesCommitted} while the initial load is writing the
+     * DAILY_SALES history.
+     */
+    public synchronized void reset(DimensionRegistry dimensions) {
+        writer = new Writer(dimensions);
+        snapshot = writer.publish();
+        loaded = true;
+    }
+
+    @Override
+    public synchronized void dailySalesCommitted(List<DailySales> dailySales) {
+        if (!loaded) {
+            return;
+        }
+        List<DailySales> sorted = new ArrayList<>(dailySales);
+        sorted.sort(Comparator.comparing(DailySales::getDailySalesId));
+
+        for (DailySales ds : sorted) {
+            if (ds.getDailySalesId() <= writer.lastId()) {
+                continue;
+            }
+            Product product = ds.getProduct();
+            Region region = ds.getRegion();
+            writer.append(ds.getDailySalesId(), ds.getDate(),
+                    product == null ? null : product.getProductId(),
+                    region == null ? null : region.getRegionId(),
+                    ds.getStateProvCd(), ds.getQuantity());
+        }
+        snapshot = writer.publish();
+    }
+
+    private static int toDay(Date date) {
+        long millis = date.getTime();
+        return (int) Math.floorDiv(millis + TimeZone.getDefault().getOffset(millis), DAY_MILLIS);
+    }
+
+    private static int lowerBound(Snapshot s, int id) {
+        int i = Arrays.binarySearch(s.ids, 0, s.size, id);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    private static int upperBound(Snapshot s, int id) {
+        int i = Arrays.binarySearch(s.ids, 0, s.size, id);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    /**
+     * Adds the totals of the slots in [lo, hi) to the given group and/or pair
+     * totals, using the checkpoints for every whole block in between.
+     */
+    private void sumRange(Snapshot s, int lo, int hi, Totals groups, Totals pairs) {
+        int firstBlock = (lo + BLOCK_SIZE - 1) >> BLOCK_SHIFT;
+        int lastBlock = hi >> BLOCK_SHIFT;
+        if (firstBlock >= lastBlock) {
+            scan(s, lo, hi, groups, pairs);
+            return;
+        }
+        Checkpoint from = s.checkpoints[firstBlock];
+        Checkpoint to = s.checkpoints[lastBlock];
+        if (groups != null) {
+            groups.add(to.groups, 1);
+            groups.add(from.groups, -1);
+        }
+        if (pairs != null) {
+            pairs.add(to.pairs, 1);
+            pairs.add(from.pairs, -1);
+        }
+        scan(s, lo, firstBlock << BLOCK_SHIFT, groups, pairs);
+        scan(s, lastBlock << BLOCK_SHIFT, hi, groups, pairs);
+    }
+
+    private void scan(Snapshot s, int lo, int hi, Totals groups, Totals pairs) {
+        DimensionRegistry d = s.dimensions;
+        if (hi > lo) scannedRows.add(hi - lo);
+        for (int i = lo; i < hi; i++) {
+            int product = s.products[i];
+            int q = s.quantities[i];
+            double unitCost = d.costOf(product);
+            double unitPrice = d.priceOf(product);
+            if (groups != null) groups.add(s.groups[i], q, unitCost, unitPrice);
+            if (pairs != null) pairs.add(s.pairs[i], q, unitCost, unitPrice);
+        }
+    }
+
+    @Override
+    public List<ProductTypeTransitCumulativeSeriesSales> findTypeRange(int startId, int endId) {
+        return typeRange(startId, endId, 0);
+    }
+
+    @Override
+    public List<ProductTypeTransitCumulativeSeriesSales> findTypeRegionRange(int startId, int endId, int regionId) {
+        return typeRange(startId, endId, regionId);
+    }
+
+    private List<ProductTypeTransitCumulativeSeriesSales> typeRange(int startId, int endId, int regionId) {
+        Snapshot s = snapshot;
+        DimensionRegistry d = s.dimensions;
+        int lo = lowerBound(s, startId);
+        int hi = upperBound(s, endId);
+
+        Totals groups = new Totals(d.regionSlots() * d.productTypeSlots());
+        sumRange(s, lo, hi, groups, null);
+        return typeTotals(s, lo, hi, groups, regionId);
+    }
+
+    /**
+     * Answers the history tab from a single pass over the range: the group
+     * totals feed both the product types and the regions, and the pair
+     * totals of the same pass give the states.
+     */
+    @Override
+    public HistoryRangeSales findHistoryRange(int startId, int endId, int regionId) {
+        Snapshot s = snapshot;
+        DimensionRegistry d = s.dimensions;
+        int lo = lowerBound(s, startId);
+        int hi = upperBound(s, endId);
+
+        Totals groups = new Totals(d.regionSlots() * d.productTypeSlots());
+        Totals pairs = regionId == 0 ? null : new Totals(s.pairCount);
+        sumRange(s, lo, hi, groups, pairs);
+
+        HistoryRangeSales result = new HistoryRangeSales();
+        result.setProductTypes(typeTotals(s, lo, hi, groups, regionId));
+        if (regionId == 0) {
+            result.setRegions(regionTotals(s, groups));
+        } else {
+            result.setStates(stateTotals(s, pairs, regionId));
+        }
+        return result;
+    }
+
+    private List<ProductTypeTransitCumulativeSeriesSales> typeTotals(Snapshot s, int lo, int hi, Totals groups, int regionId) {
+        DimensionRegistry d = s.dimensions;
+        int typeCount = d.productTypeSlots();
+        int groupCount = d.regionSlots() * typeCount;
+        Totals types = new Totals(typeCount);
+        for (int group = 0; group < groupCount; group++) {
+            if (regionId != 0 && group / typeCount != regionId) continue;
+            int type = group % typeCount;
+            types.units[type] += groups.units[group];
+            types.cost[type] += groups.cost[group];
+            types.sales[type] += groups.sales[group];
+            types.rows[type] += groups.rows[group];
+        }
+
+        List<List<Double>> series = dailySeries(s, lo, hi, regionId);
+
+        List<ProductTypeTransitCumulativeSeriesSales> result = new ArrayList<>();
+        for (int type = 1; type < typeCount; type++) {
+            if (types.rows[type] == 0) continue;
+            ProductTypeTransitCumulativeSeriesSales t = new ProductTypeTransitCumulativeSeriesSales();
+            t.setCost(types.cost[type]);
+            t.setSales(types.sales[type]);
+            t.setUnits(types.units[type]);
+            t.setProductType(d.getProductType(type));
+            t.setSeries(series.get(type));
+            result.add(t);
+        }
+        return result;
+    }
+
+    /**
+     * Daily unit totals per product type over the slots in [lo, hi), in date
+     * order. Days lying completely inside the range come from the rollups,
+     * only days cut by the range bounds are scanned.
+     */
+    private List<List<Double>> dailySeries(Snapshot s, int lo, int hi, int regionId) {
+        int typeCount = s.dimensions.productTypeSlots();
+        List<DayRollup> covered = new ArrayList<>();
+        if (s.daysInOrder) {
+            //only the rollups of the days from the one of lo to the one of hi - 1, already in date order
+            if (lo < hi) {
+                for (int k = rollupOf(s, lo), last = rollupOf(s, hi - 1); k <= last; k++) {
+                    covered.add(s.dayRollups[k]);
+                }
+            }
+        } else {
+            for (int k = 0; k < s.dayCount; k++) {
+                DayRollup rollup = s.dayRollups[k];
+                if (rollup.last >= lo && rollup.first < hi) {
+                    covered.add(rollup);
+                }
+            }
+            covered.sort(Comparator.comparingInt(r -> r.day));
+        }
+
+        List<List<Double>> series = new ArrayList<>(typeCount);
+        for (int type = 0; type < typeCount; type++) {
+            series.add(new ArrayList<>());
+        }
+        long[] units = new long[typeCount];
+        int[] rows = new int[typeCount];
+        for (DayRollup rollup : covered) {
+            Arrays.fill(units, 0);
+            Arrays.fill(rows, 0);
+            if (rollup.first >= lo && rollup.last < hi) {
+                for (int group = 0; group < rollup.rows.length; group++) {
+                    if (rollup.rows[group] == 0 || (regionId != 0 && group / typeCount != regionId)) continue;
+                    units[group % typeCount] += rollup.units[group];
+                    rows[group % typeCount] += rollup.rows[group];
+                }
+            } else {
+                int start = Math.max(rollup.first, lo), end = Math.min(rollup.last + 1, hi);
+                scannedRows.add(end - start);
+                for (int i = start; i < end; i++) {
+                    int group = s.groups[i];
+                    if (s.days[i] != rollup.day || (regionId != 0 && group / typeCount != regionId)) continue;
+                    units[group % typeCount] += s.quantities[i];
+                    rows[group % typeCount]++;
+                }
+            }
+            for (int type = 1; type < typeCount; type++) {
+                if (rows[type] > 0) series.get(type).add((double) units[type]);
+            }
+        }
+        return series;
+    }
+
+    /**
+     * Position of the rollup of the day the slot belongs to: the last one
+     * starting at or before it. Rollups are added as their first slot is
+     * appended, so they are ordered by it.
+     */
+    private static int rollupOf(Snapshot s, int slot) {
+        int low = 0, high = s.dayCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (s.dayRollups[mid].first <= slot) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public List<RegionTransitCumulativeSales> findRegionRange(int startId, int endId) {
+        Snapshot s = snapshot;
+        DimensionRegistry d = s.dimensions;
+        int lo = lowerBound(s, startId);
+        int hi = upperBound(s, endId);
+
+        Totals groups = new Totals(d.regionSlots() * d.productTypeSlots());
+        sumRange(s, lo, hi, groups, null);
+        return regionTotals(s, groups);
+    }
+
+    private static List<RegionTransitCumulativeSales> regionTotals(Snapshot s, Totals groups) {
+        DimensionRegistry d = s.dimensions;
+        int typeCount = d.productTypeSlots();
+        int regionCount = d.regionSlots();
+
+        List<RegionTransitCumulativeSales> result = new ArrayList<>();
+        for (int region = 1; region < regionCount; region++) {
+            long units = 0;
+            double cost = 0;
+            double sales = 0;
+            int rows = 0;
+            for (int group = region * typeCount, end = group + typeCount; group < end; group++) {
+                units += groups.units[group];
+                cost += groups.cost[group];
+                sales += groups.sales[group];
+                rows += groups.rows[group];
+            }
+            if (rows == 0) continue;
+            RegionTransitCumulativeSales t = new RegionTransitCumulativeSales();
+            t.setCost(cost);
+            t.setSales(sales);
+            t.setUnits(units);
+            t.setRegion(d.getRegion(region));
+            result.add(t);
+        }
+        return result;
+    }
+
+    @Override
+    public List<StateTransitCumulativeSales> findStateRange(int startId, int endId, int regionId) {
+        Snapshot s = snapshot;
+        int lo = lowerBound(s, startId);
+        int hi = upperBound(s, endId);
+
+        Totals pairs = new Totals(s.pairCount);
+        sumRange(s, lo, hi, null, pairs);
+        return stateTotals(s, pairs, regionId);
+    }
+
+    private static List<StateTransitCumulativeSales> stateTotals(Snapshot s, Totals pairs, int regionId) {
+        List<StateTransitCumulativeSales> result = new ArrayList<>();
+        for (int pair = 0; pair < s.pairCount; pair++) {
+            if (pairs.rows[pair] == 0 || regionId == 0 || s.pairRegions[pair] != regionId) continue;
+            StateTransitCumulativeSales t = new StateTransitCumulativeSales();
+            t.setCost(pairs.cost[pair]);
+            t.setSales(pairs.sales[pair]);
+            t.setUnits(pairs.units[pair]);
+            t.setState(s.stateCodes[s.pairStates[pair]]);
+            result.add(t);
+        }
+        result.sort(Comparator.comparing(StateTransitCumulativeSales::getState, Comparator.nullsFirst(Comparator.<String>naturalOrder())));
+        return result;
+    }
+}
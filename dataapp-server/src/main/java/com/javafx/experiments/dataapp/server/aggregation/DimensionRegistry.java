@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.server.aggregation;
+
+import com.javafx.experiments.dataapp.model.Product;
+import com.javafx.experiments.dataapp.model.ProductType;
+import com.javafx.experiments.dataapp.model.Region;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+/**
+ * Immutable lookup of the ProductType, Region and Product dimensions by id.
+ * <p/>
+ * The dimension tables never change once the database has been initialized,
+ * so they are read once at startup and the detached entities are shared by
+ * every request. Lookups are plain array accesses and never touch a
+ * persistence context.
+ */
+public final class DimensionRegistry {
+
+    private final ProductType[] productTypes;
+    private final Region[] regions;
+    private final Product[] products;
+    private final int[] productTypeIds;
+    private final double[] productCosts;
+    private final double[] productPrices;
+
+    private DimensionRegistry(List<ProductType> typeList, List<Region> regionList, List<Product> productList) {
+        int maxTypeId = 0;
+        for (ProductType pt : typeList) maxTypeId = Math.max(maxTypeId, pt.getProductTypeId());
+        productTypes = new ProductType[maxTypeId + 1];
+        for (ProductType pt : typeList) productTypes[pt.getProductTypeId()] = pt;
+
+        int maxRegionId = 0;
+        for (Region r : regionList) maxRegionId = Math.max(maxRegionId, r.getRegionId());
+        regions = new Region[maxRegionId + 1];
+        for (Region r : regionList) regions[r.getRegionId()] = r;
+
+        int maxProductId = 0;
+        for (Product p : productList) maxProductId = Math.max(maxProductId, p.getProductId());
+        products = new Product[maxProductId + 1];
+        productTypeIds = new int[maxProductId + 1];
+        productCosts = new double[maxProductId + 1];
+        productPrices = new double[maxProductId + 1];
+        for (Product p : productList) {
+            int id = p.getProductId();
+            products[id] = p;
+            productTypeIds[id] = p.getProductType() == null ? 0 : p.getProductType().getProductTypeId();
+            productCosts[id] = p.getCost() == null ? 0 : p.getCost();
+            productPrices[id] = p.getPrice() == null ? 0 : p.getPrice();
+        }
+    }
+
+    /**
+     * Reads all product types, regions and products. The entity manager is
+     * cleared afterwards so the returned entities are detached.
+     */
+    public static DimensionRegistry load(EntityManager em) {
+        List<ProductType> types = em.createNamedQuery("ProductType.findAll", ProductType.class).getResultList();
+        List<Region> regionList = em.createNamedQuery("Region.findAll", Region.class).getResultList();
+        List<Product> products = em.createNamedQuery("Product.findAll", Product.class).getResultList();
+        DimensionRegistry registry = new DimensionRegistry(types, regionList, products);
+        em.clear();
+        return registry;
+    }
+
+    /**
+     * One more than the highest product type id, the length of an array
+     * indexed by product type id.
+     */
+    public int productTypeSlots() {
+        return productTypes.length;
+    }
+
+    /**
+     * One more than the highest region id, the length of an array indexed by
+     * region id.
+     */
+    public int regionSlots() {
+        return regions.length;
+    }
+
+    public ProductType getProductType(int productTypeId) {
+        return productTypeId >= 0 && productTypeId < productTypes.length ? productTypes[productTypeId] : null;
+    }
+
+    public ProductType getProductType(Integer productTypeId) {
+        return productTypeId == null ? null : getProductType(productTypeId.intValue());
+    }
+
+    public Region getRegion(int regionId) {
+        return regionId >= 0 && regionId < regions.length ? regions[regionId] : null;
+    }
+
+    public Region getRegion(Integer regionId) {
+        return regionId == null ? null : getRegion(regionId.intValue());
+    }
+
+    public Product getProduct(int productId) {
+        return productId >= 0 && productId < products.length ? products[productId] : null;
+    }
+
+    /**
+     * The product type id of the product, or 0 for an unknown product.
+     */
+    public int productTypeIdOf(int productId) {
+        return productId >= 0 && productId < productTypeIds.length ? productTypeIds[productId] : 0;
+    }
+
+    public double costOf(int productId) {
+        return productId >= 0 && productId < productCosts.length ? productCosts[productId] : 0;
+    }
+
+    public double priceOf(int productId) {
+        return productId >= 0 && productId < productPrices.length ? productPrices[productId] : 0;
+    }
+}
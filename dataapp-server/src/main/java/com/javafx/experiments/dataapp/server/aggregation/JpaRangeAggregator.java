@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.server.aggregation;
+
+import com.javafx.experiments.dataapp.model.ProductType;
+import com.javafx.experiments.dataapp.model.Region;
+import com.javafx.experiments.dataapp.model.transit.HistoryRangeSales;
+import com.javafx.experiments.dataapp.model.transit.ProductTypeTransitCumulativeSeriesSales;
+import com.javafx.experiments.dataapp.model.transit.RegionTransitCumulativeSales;
+import com.javafx.experiments.dataapp.model.transit.StateTransitCumulativeSales;
+import com.javafx.experiments.dataapp.server.metrics.MetricsRegistry;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Parameter;
+import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * RangeAggregator that runs the range queries directly against H2. Product
+ * types and regions in the results are resolved through the
+ * DimensionRegistry rather than the entity manager.
+ */
+public class JpaRangeAggregator implements RangeAggregator {
+
+    private static final String TYPE_SUM_QUERY =
+              "select sum(hs.quantity * p.cost), "
+                + "sum(hs.quantity * p.price), "
+                + "sum(hs.quantity), "
+                + "pt.productTypeId "
+            + "from DailySales hs "
+            + "left join hs.product p "
+            + "left join p.productType pt "
+            + "where hs.dailySalesId >= :startId and hs.dailySalesId <= :endId "
+            + "group by pt.productTypeId";
+
+    private static final String TYPE_RANGE_QUERY =
+            "select sum(hs.quantity), "
+                + "pt.productTypeId "
+            + "from DailySales hs "
+            + "left join hs.product p "
+            + "left join p.productType pt "
+            + "where hs.dailySalesId >= :startId and hs.dailySalesId <= :endId "
+            + "group by pt.productTypeId, hs.date ";
+
+    private static final String REGION_SUM_QUERY =
+            "select sum(hs.quantity * p.cost), "
+                + "sum(hs.quantity * p.price), "
+                + "sum(hs.quantity), "
+                + "r.regionId "
+            + "from DailySales hs "
+            + "left join hs.product p "
+            + "left join hs.region r "
+            + "where hs.dailySalesId >= :startId and hs.dailySalesId <= :endId "
+            + "group by r.regionId";
+
+    private static final String REGION_TYPE_SUM_QUERY =
+            "select sum(hs.quantity * p.cost), "
+                + "sum(hs.quantity * p.price), "
+                + "sum(hs.quantity), "
+                + "pt.productTypeId "
+            + "from DailySales hs "
+            + "left join hs.product p "
+            + "left join p.productType pt "
+            + "where hs.dailySalesId >= :startId and hs.dailySalesId <= :endId "
+            + "and hs.region.regionId = :regionId "
+            + "group by pt.productTypeId ";
+
+    private static final String REGION_TYPE_RANGE_QUERY =
+            "select sum(hs.quantity), "
+                + "pt.productTypeId "
+            + "from DailySales hs "
+            + "left join hs.product p "
+            + "left join p.productType pt "
+            + "where hs.dailySalesId >= :startId and hs.dailySalesId <= :endId "
+            + "and hs.region.regionId = :regionId "
+            + "group by pt.productTypeId, hs.date ";
+
+    private static final String STATE_SUM_QUERY =
+            "select sum(hs.quantity * p.cost), "
+                + "sum(hs.quantity * p.price), "
+                + "sum(hs.quantity), "
+                + "hs.stateProvCd "
+            + "from DailySales hs "
+            + "left join hs.product p "
+            + "where hs.dailySalesId >= :startId and hs.dailySalesId <= :endId "
+            + "and hs.region.regionId = :regionId "
+            + "group by hs.stateProvCd";
+
+    private final EntityManager em;
+    private final DimensionRegistry dimensions;
+    private final MetricsRegistry metrics;
+
+    public JpaRangeAggregator(EntityManager em, DimensionRegistry dimensions, MetricsRegistry metrics) {
+        this.em = em;
+        this.dimensions = dimensions;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public List<ProductTypeTransitCumulativeSeriesSales> findTypeRange(int startId, int endId) {
+        TypedQuery<Object[]> q = em.createQuery(TYPE_SUM_QUERY, Object[].class);
+
+        Parameter<Integer> p1 = q.getParameter("startId", Integer.class);
+        q.setParameter(p1, startId);
+        Parameter<Integer> p2 = q.getParameter("endId", Integer.class);
+        q.setParameter(p2, endId);
+
+        List<ProductTypeTransitCumulativeSeriesSales> result = new ArrayList<>();
+        List<Object[]> resultList = metrics.resultList("jpa/type/sum", q);
+
+        for (Object[] o : resultList) {
+            ProductTypeTransitCumulativeSeriesSales t = new ProductTypeTransitCumulativeSeriesSales();
+            t.setCost((Double)o[0]);
+            t.setSales((Double) o[1]);
+            t.setUnits((Long) o[2]);
+            ProductType pt = dimensions.getProductType((Integer) o[3]);
+            t.setProductType(pt);
+            result.add(t);
+        }
+
+        //building sales range
+        HashMap<ProductType, List<Double>> seriesGenerator = new HashMap<>();
+
+        TypedQuery<Object[]> q2 = em.createQuery(TYPE_RANGE_QUERY, Object[].class);
+        p1 = q2.getParameter("startId", Integer.class);
+        q2.setParameter(p1, startId);
+        p2 = q2.getParameter("endId", Integer.class);
+        q2.setParameter(p2, endId);
+        resultList = metrics.resultList("jpa/type/series", q2);
+
+        for (Object[] o : resultList) {
+            ProductType pt = dimensions.getProductType((Integer) o[1]);
+            if (!seriesGenerator.containsKey(pt)) {
+                seriesGenerator.put(pt, new ArrayList<>());
+            }
+            seriesGenerator.get(pt).add(((Long)o[0]).doubleValue());
+        }
+        for (ProductTypeTransitCumulativeSeriesSales tcs : result){
+            tcs.setSeries(seriesGenerator.get(tcs.getProductType())) ;
+        }
+
+        return result;
+    }
+
+    @Override
+    public List<ProductTypeTransitCumulativeSeriesSales> findTypeRegionRange(int startId, int endId, int regionId) {
+        TypedQuery<Object[]> q = em.createQuery(REGION_TYPE_SUM_QUERY, Object[].class);
+
+        Parameter<Integer> p1 = q.getParameter("startId", Integer.class);
+        q.setParameter(p1, startId);
+        Parameter<Integer> p2 = q.getParameter("endId", Integer.class);
+        q.setParameter(p2, endId);
+        Parameter<Integer> p3 = q.getParameter("regionId", Integer.class);
+        q.setParameter(p3, regionId);
+
+        List<ProductTypeTransitCumulativeSeriesSales> result = new ArrayList<>();
+        List<Object[]> resultList = metrics.resultList("jpa/type/region/sum", q);
+
+        for (Object[] o : resultList) {
+            ProductTypeTransitCumulativeSeriesSales t = new ProductTypeTransitCumulativeSeriesSales();
+            t.setCost((Double)o[0]);
+            t.setSales((Double) o[1]);
+            t.setUnits((Long) o[2]);
+            ProductType pt = dimensions.getProductType((Integer) o[3]);
+            t.setProductType(pt);
+            result.add(t);
+        }
+
+        //building sales range
+        HashMap<ProductType, List<Double>> seriesGenerator = new HashMap<>();
+
+        TypedQuery<Object[]> q2 = em.createQuery(REGION_TYPE_RANGE_QUERY, Object[].class);
+        p1 = q2.getParameter("startId", Integer.class);
+        p2 = q2.getParameter("endId", Integer.class);
+        p3 = q2.getParameter("regionId", Integer.class);
+        q2.setParameter(p1, startId);
+        q2.setParameter(p2, endId);
+        q2.setParameter(p3, regionId);
+        resultList = metrics.resultList("jpa/type/region/series", q2);
+
+        for (Object[] o : resultList) {
+            ProductType pt = dimensions.getProductType((Integer) o[1]);
+            if (!seriesGenerator.containsKey(pt)){
+                seriesGenerator.put(pt, new ArrayList<>());
+            }
+            seriesGenerator.get(pt).add(((Long)o[0]).doubleValue());
+        }
+        for (ProductTypeTransitCumulativeSeriesSales tcs : result){
+            tcs.setSeries(seriesGenerator.get(tcs.getProductType()));
+        }
+
+        return result;
+    }
+
+    @Override
+    public List<RegionTransitCumulativeSales> findRegionRange(int startId, int endId) {
+        TypedQuery<Object[]> q = em.createQuery(REGION_SUM_QUERY, Object[].class);
+        Parameter<Integer> p1 = q.getParameter("startId", Integer.class);
+        q.setParameter(p1, startId);
+        Parameter<Integer> p2 = q.getParameter("endId", Integer.class);
+        q.setParameter(p2, endId);
+
+        List<RegionTransitCumulativeSales> result = new ArrayList<>();
+        List<Object[]> resultList = metrics.resultList("jpa/region/sum", q);
+
+        for (Object[] o : resultList) {
+            RegionTransitCumulativeSales t = new RegionTransitCumulativeSales();
+            t.setCost((Double)o[0]);
+            t.setSales((Double) o[1]);
+            t.setUnits((Long) o[2]);
+            Region region = dimensions.getRegion((Integer) o[3]);
+            t.setRegion(region);
+            result.add(t);
+        }
+
+        return result;
+    }
+
+    @Override
+    public List<StateTransitCumulativeSales> findStateRange(int startId, int endId, int regionId) {
+        TypedQuery<Object[]> q = em.createQuery(STATE_SUM_QUERY, Object[].class);
+        Parameter<Integer> p1 = q.getParameter("startId", Integer.class);
+        q.setParameter(p1, startId);
+        Parameter<Integer> p2 = q.getParameter("endId", Integer.class);
+        q.setParameter(p2, endId);
+        Parameter<Integer> p3 = q.getParameter("regionId", Integer.class);
+        q.setParameter(p3, regionId);
+
+        List<StateTransitCumulativeSales> result = new ArrayList<>();
+        List<Object[]> resultList = metrics.resultList("jpa/state/sum", q);
+
+        for (Object[] o : resultList) {
+            StateTransitCumulativeSales t = new StateTransitCumulativeSales();
+            t.setCost((Double)o[0]);
+            t.setSales((Double) o[1]);
+            t.setUnits((Long) o[2]);
+            t.setState((String) o[3]);
+            result.add(t);
+        }
+
+        return result;
+    }
+
+    /**
+     * Only used while the cube is loading, so this simply runs the queries of
+     * the separate range endpoints.
+     */
+    @Override
+    public HistoryRangeSales findHistoryRange(int startId, int endId, int regionId) {
+        HistoryRangeSales result = new HistoryRangeSales();
+        if (regionId == 0) {
+            result.setProductTypes(findTypeRange(startId, endId));
+            result.setRegions(findRegionRange(startId, endId));
+        } else {
+            result.setProductTypes(findTypeRegionRange(startId, endId, regionId));
+            result.setStates(findStateRange(startId, endId, regionId));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.server.aggregation;
+
+import com.javafx.experiments.dataapp.model.transit.HistoryRangeSales;
+import com.javafx.experiments.dataapp.model.transit.ProductTypeTransitCumulativeSeriesSales;
+import com.javafx.experiments.dataapp.model.transit.RegionTransitCumulativeSales;
+import com.javafx.experiments.dataapp.model.transit.StateTransitCumulativeSales;
+
+import java.util.List;
+
+/**
+ * Aggregates DAILY_SALES over an inclusive range of dailySalesIds, as used by
+ * the history tab.
+ */
+public interface RangeAggregator {
+
+    List<ProductTypeTransitCumulativeSeriesSales> findTypeRange(int startId, int endId);
+
+    List<ProductTypeTransitCumulativeSeriesSales> findTypeRegionRange(int startId, int endId, int regionId);
+
+    List<RegionTransitCumulativeSales> findRegionRange(int startId, int endId);
+
+    List<StateTransitCumulativeSales> findStateRange(int startId, int endId, int regionId);
+
+    /**
+     * The product type totals and series of the range, with the region
+     * breakdown if regionId is 0 and the state breakdown of that region
+     * otherwise.
+     */
+    HistoryRangeSales findHistoryRange(int startId, int endId, int regionId);
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.server.cache;
+
+import com.javafx.experiments.dataapp.model.DailySales;
+import com.javafx.experiments.dataapp.simulation.DailySalesListener;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+/**
+ * Version of the data behind the history, heat map and reference data
+ * endpoints, used as their ETag.
+ * <p/>
+ * DAILY_SALES only ever grows, one commit of the DailySalesGenerator a day,
+ * so the highest dailySalesId identifies the data of one database: it is
+ * loaded at startup and moves forward with every commit. A recreated
+ * database can reach the same id with other rows, so the version also
+ * carries the time the server started, and clients revalidate after every
+ * restart. Register it as listener after the DailySalesCube and the
+ * ResultCache, so a request that sees the new version also sees the new
+ * data.
+ */
+public class DataVersion implements DailySalesListener {
+
+    private final long epoch = System.currentTimeMillis();
+    private volatile long version;
+
+    public void load(EntityManager em) {
+        Integer maxId = em.createQuery("select max(d.dailySalesId) from DailySales d", Integer.class).getSingleResult();
+        version = maxId == null ? 0 : maxId;
+    }
+
+    @Override
+    public void dailySalesCommitted(List<DailySales> dailySales) {
+        long max = version;
+        for (DailySales ds : dailySales) {
+            max = Math.max(max, ds.getDailySalesId());
+        }
+        version = max;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the startup time that tells apart the versions of databases
+     * recreated in between.
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.server.cache;
+
+import com.javafx.experiments.dataapp.model.DailySales;
+import com.javafx.experiments.dataapp.simulation.DailySalesListener;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caches the results of the history endpoints, which only change when new
+ * DAILY_SALES rows are committed.
+ * <p/>
+ * Entries are keyed by endpoint and parameters and remember the data
+ * generation they were computed in. The generation is bumped every time the
+ * DailySalesGenerator commits, which invalidates every entry at once, including
+ * results still being computed from the old data. Register the cache as
+ * listener after the DailySalesCube, so the cube is up to date by the time the
+ * generation changes.
+ * <p/>
+ * The cache holds at most maxEntries results and evicts the least recently
+ * used one first.
+ */
+public class ResultCache implements DailySalesListener {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final Map<Key, CachedResult> entries;
+
+    public ResultCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public ResultCache(final int maxEntries) {
+        entries = new LinkedHashMap<Key, CachedResult>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedResult> eldest) {
+                if (size() > maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static Key key(String endpoint, Object... params) {
+        return new Key(endpoint, params);
+    }
+
+    /**
+     * Returns the cached result for the key, computing it with the loader if
+     * there is none for the current generation. Concurrent misses for the same
+     * key each run the loader, unless the caller goes through a RequestCoalescer.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Key key, Supplier<T> loader) {
+        long current = generation.get();
+        synchronized (entries) {
+            CachedResult cached = entries.get(key);
+            if (cached != null && cached.generation == current) {
+                hits.incrementAndGet();
+                return (T) cached.value;
+            }
+        }
+        misses.incrementAndGet();
+        T value = loader.get();
+        synchronized (entries) {
+            //a result computed from data that changed meanwhile is not kept
+            if (generation.get() == current) {
+                entries.put(key, new CachedResult(current, value));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns the cached result for the key if there is one for the current
+     * generation, and null otherwise. A miss is not counted, since the caller
+     * still goes through {@link #get} to compute the result.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T peek(Key key) {
+        long current = generation.get();
+        synchronized (entries) {
+            CachedResult cached = entries.get(key);
+            if (cached != null && cached.generation == current) {
+                hits.incrementAndGet();
+                return (T) cached.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Starts a new data generation, so every result computed so far is
+     * recomputed on its next request.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    @Override
+    public void dailySalesCommitted(List<DailySales> dailySales) {
+        System.out.println("Invalidating result cache, " + getStats());
+        invalidate();
+    }
+
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public String getStats() {
+        long h = hits.get();
+        long m = misses.get();
+        long requests = h + m;
+        return "generation=" + generation.get()
+                + " entries=" + size()
+                + " hits=" + h
+                + " misses=" + m
+                + " evictions=" + evictions.get()
+                + " hitRate=" + (requests == 0 ? 0 : (100 * h / requests)) + "%";
+    }
+
+    public static final class Key {
+        private final String endpoint;
+        private final Object[] params;
+
+        private Key(String endpoint, Object[] params) {
+            this.endpoint = endpoint;
+            this.params = params;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return endpoint.equals(other.endpoint) && Arrays.equals(params, other.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * endpoint.hashCode() + Arrays.hashCode(params);
+        }
+
+        @Override
+        public String toString() {
+            return endpoint + Arrays.toString(params);
+        }
+    }
+
+    private static final class CachedResult {
+        private final long generation;
+        private final Object value;
+
+        CachedResult(long generation, Object value) {
+            this.generation = generation;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.server.live;
+
+import com.javafx.experiments.dataapp.model.LiveSalesList;
+import com.javafx.experiments.dataapp.simulation.LiveSalesListener;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.OutboundEvent;
+
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Pushes committed sales to the clients subscribed to the live sales stream.
+ * <p/>
+ * Each subscription has its own optional region and product type filter, the
+ * same ones the /recent endpoints take. Events are written on a single
+ * background thread, so a slow client never holds up the SalesSimulator, and a
+ * client is dropped as soon as writing to it fails.
+ */
+public class LiveSalesBroadcaster implements LiveSalesListener {
+
+    private static final String EVENT_NAME = "sale";
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "live-sales-broadcaster");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * @param regionName    region name to filter on, or null for all regions
+     * @param productTypeId product type to filter on, or null or -1 for all
+     *                      product types
+     * @return the open event stream of the new subscription
+     */
+    public EventOutput subscribe(String regionName, Integer productTypeId) {
+        EventOutput output = new EventOutput();
+        if (productTypeId != null && productTypeId < 0) {
+            productTypeId = null;
+        }
+        subscriptions.add(new Subscription(output, regionName, productTypeId));
+        return output;
+    }
+
+    @Override
+    public void liveSalesCommitted(final List<LiveSalesList> liveSales) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                publish(liveSales);
+            }
+        });
+    }
+
+    public void close() {
+        executor.shutdownNow();
+        for (Subscription subscription : subscriptions) {
+            subscription.close();
+        }
+        subscriptions.clear();
+    }
+
+    private void publish(List<LiveSalesList> liveSales) {
+        //every event is serialized once per subscription that accepts it, so build them lazily and share them
+        OutboundEvent[] events = new OutboundEvent[liveSales.size()];
+        for (Subscription subscription : subscriptions) {
+            try {
+                if (subscription.output.isClosed()) {
+                    throw new IOException("closed by client");
+                }
+                for (int i = 0; i < events.length; i++) {
+                    LiveSalesList liveSale = liveSales.get(i);
+                    if (!subscription.accepts(liveSale)) {
+                        continue;
+                    }
+                    if (events[i] == null) {
+                        events[i] = new OutboundEvent.Builder()
+                                .name(EVENT_NAME)
+                                .id(String.valueOf(liveSale.getOrderLineId()))
+                                .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                                .data(LiveSalesList.class, liveSale)
+                                .build();
+                    }
+                    subscription.output.write(events[i]);
+                }
+            } catch (IOException e) {
+                subscriptions.remove(subscription);
+                subscription.close();
+            }
+        }
+    }
+
+    private static final class Subscription {
+        private final EventOutput output;
+        private final String regionName;
+        private final Integer productTypeId;
+
+        Subscription(EventOutput output, String regionName, Integer productTypeId) {
+            this.output = output;
+            this.regionName = regionName;
+            this.productTypeId = productTypeId;
+        }
+
+        boolean accepts(LiveSalesList liveSale) {
+            return (regionName == null || regionName.equals(liveSale.getRegion()))
+                    && (productTypeId == null || productTypeId.equals(liveSale.getProductTypeId()));
+        }
+
+        void close() {
+            try {
+                output.close();
+            } catch (IOException e) {
+                //the client is gone already
+            }
+        }
+    }
+}
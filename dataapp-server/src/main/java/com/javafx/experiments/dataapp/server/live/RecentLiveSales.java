@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.server.live;
+
+import com.javafx.experiments.dataapp.model.LiveSalesList;
+import com.javafx.experiments.dataapp.simulation.LiveSalesListener;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded ring buffer of the most recent LIVE_SALES_LIST rows, so the live
+ * tab's "recent" and "since orderLineId" queries are answered from memory.
+ * <p/>
+ * Besides the ring itself every row links to the previous row of the same
+ * region, of the same product type and of the same region and product type, so
+ * a filtered query only visits the rows it returns. A query that would need
+ * rows older than the buffer holds returns null, and the caller falls back to
+ * the LIVE_SALES_LIST table.
+ * <p/>
+ * There is a single writer, the thread committing sales, and no locking:
+ * entries are immutable and published through an AtomicReferenceArray, and a
+ * reader that finds a slot overwritten while it walks a chain simply treats the
+ * rest of the chain as evicted.
+ */
+public class RecentLiveSales implements LiveSalesListener {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    //chain markers: there is no older row, or older rows exist but are not in the buffer
+    private static final long NONE = -1;
+    private static final long MISSING = -2;
+
+    private static final int ALL = 0;
+    private static final int REGION = 1;
+    private static final int PRODUCT_TYPE = 2;
+    private static final int REGION_PRODUCT_TYPE = 3;
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<Entry> slots;
+    private final ConcurrentHashMap<String, Long> regionHeads = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Long> productTypeHeads = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> regionProductTypeHeads = new ConcurrentHashMap<>();
+    //what precedes the oldest row ever appended, MISSING until loaded from the database
+    private volatile long base = MISSING;
+    //number of rows ever appended, the newest one has sequence size - 1
+    private volatile long size;
+
+    public RecentLiveSales() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of rows kept, rounded up to a power of two
+     */
+    public RecentLiveSales(int capacity) {
+        int n = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.capacity = n;
+        this.mask = n - 1;
+        this.slots = new AtomicReferenceArray<>(n);
+    }
+
+    /**
+     * Fills the buffer with the most recent rows of LIVE_SALES_LIST. Has to be
+     * called once, before any sale is appended.
+     */
+    public void load(EntityManager em) {
+        if (size != 0) {
+            throw new IllegalStateException("Recent live sales are loaded already");
+        }
+        long start = System.currentTimeMillis();
+        List<LiveSalesList> rows = em.createNamedQuery("LiveSalesList.findRecent", LiveSalesList.class)
+                .setMaxResults(capacity)
+                .getResultList();
+        base = rows.size() < capacity ? NONE : MISSING;
+        for (int i = rows.size() - 1; i >= 0; i--) {
+            append(rows.get(i));
+        }
+        System.out.println("Loaded " + rows.size() + " recent live sales in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    @Override
+    public void liveSalesCommitted(List<LiveSalesList> liveSales) {
+        for (LiveSalesList liveSale : liveSales) {
+            append(liveSale);
+        }
+    }
+
+    /**
+     * Finds the most recent rows, newest first, as the database would return them.
+     *
+     * @param regionName      region name to filter on, or null
+     * @param productTypeId   product type to filter on, or null
+     * @param fromOrderLineId only rows with a greater orderLineId are returned
+     * @param maxResults      maximum number of rows returned
+     * @return the rows, or null if the buffer does not hold all of them
+     */
+    public List<LiveSalesList> find(String regionName, Integer productTypeId, int fromOrderLineId, int maxResults) {
+        int chain;
+        long seq;
+        if (regionName != null && productTypeId != null) {
+            chain = REGION_PRODUCT_TYPE;
+            seq = head(regionProductTypeHeads, regionProductTypeKey(regionName, productTypeId));
+        } else if (regionName != null) {
+            chain = REGION;
+            seq = head(regionHeads, regionName);
+        } else if (productTypeId != null) {
+            chain = PRODUCT_TYPE;
+            seq = head(productTypeHeads, productTypeId);
+        } else {
+            chain = ALL;
+            long n = size;
+            seq = n > 0 ? n - 1 : base;
+        }
+
+        List<LiveSalesList> result = new ArrayList<>();
+        while (result.size() < maxResults && seq != NONE) {
+            if (seq == MISSING) {
+                return null;
+            }
+            Entry entry = slots.get((int) seq & mask);
+            if (entry == null || entry.seq != seq) {
+                //evicted
+                return null;
+            }
+            if (entry.liveSale.getOrderLineId() <= fromOrderLineId) {
+                break;
+            }
+            result.add(entry.liveSale);
+            seq = entry.prev[chain];
+        }
+        return result;
+    }
+
+    private void append(LiveSalesList liveSale) {
+        long seq = size;
+        String regionName = liveSale.getRegion();
+        Integer productTypeId = liveSale.getProductTypeId();
+        String regionProductTypeKey = regionName != null && productTypeId != null
+                ? regionProductTypeKey(regionName, productTypeId) : null;
+
+        long[] prev = new long[4];
+        prev[ALL] = seq > 0 ? seq - 1 : base;
+        prev[REGION] = head(regionHeads, regionName);
+        prev[PRODUCT_TYPE] = head(productTypeHeads, productTypeId);
+        prev[REGION_PRODUCT_TYPE] = head(regionProductTypeHeads, regionProductTypeKey);
+        slots.set((int) seq & mask, new Entry(seq, liveSale, prev));
+
+        //the entry is published before anything points to it
+        if (regionName != null) {
+            regionHeads.put(regionName, seq);
+        }
+        if (productTypeId != null) {
+            productTypeHeads.put(productTypeId, seq);
+        }
+        if (regionProductTypeKey != null) {
+            regionProductTypeHeads.put(regionProductTypeKey, seq);
+        }
+        size = seq + 1;
+    }
+
+    private <K> long head(ConcurrentHashMap<K, Long> heads, K key) {
+        Long seq = key == null ? null : heads.get(key);
+        return seq == null ? base : seq;
+    }
+
+    private static String regionProductTypeKey(String regionName, Integer productTypeId) {
+        return regionName + '/' + productTypeId;
+    }
+
+    private static final class Entry {
+        private final long seq;
+        private final LiveSalesList liveSale;
+        private final long[] prev;
+
+        Entry(long seq, LiveSalesList liveSale, long[] prev) {
+            this.seq = seq;
+            this.liveSale = liveSale;
+            this.prev = prev;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.server.metrics;
+
+import javax.persistence.TypedQuery;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Histograms, counters and gauges of the server, written out by the
+ * MetricsResource in the Prometheus text exposition format.
+ * <p/>
+ * A metric is a family name plus label name/value pairs, created on first
+ * use and kept for the life of the server, so labels must only take a small
+ * set of values such as endpoint templates or query names. Latencies are
+ * recorded in nanoseconds and exposed in seconds, as summaries with a few
+ * quantiles.
+ */
+public class MetricsRegistry {
+
+    public static final String REQUEST_SECONDS = "dataapp_request_seconds";
+    public static final String REQUESTS = "dataapp_requests_total";
+    public static final String RESPONSE_ROWS = "dataapp_response_rows_total";
+    public static final String QUERY_SECONDS = "dataapp_query_seconds";
+    public static final String QUERY_ROWS = "dataapp_query_rows_total";
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private enum Type {
+        SUMMARY("summary"), COUNTER("counter"), GAUGE("gauge");
+
+        private final String exposition;
+
+        Type(String exposition) {
+            this.exposition = exposition;
+        }
+    }
+
+    private static final class Family {
+        final Type type;
+        final ConcurrentMap<String, Object> series = new ConcurrentHashMap<>();
+
+        Family(Type type) {
+            this.type = type;
+        }
+    }
+
+    private final ConcurrentMap<String, Family> families = new ConcurrentHashMap<>();
+
+    public LatencyHistogram histogram(String name, String... labels) {
+        return (LatencyHistogram) series(name, Type.SUMMARY, labels, LatencyHistogram::new);
+    }
+
+    public LongAdder counter(String name, String... labels) {
+        return (LongAdder) series(name, Type.COUNTER, labels, LongAdder::new);
+    }
+
+    /**
+     * Exposes a count kept elsewhere, such as the hits of the ResultCache.
+     */
+    public void counter(String name, LongSupplier value, String... labels) {
+        series(name, Type.COUNTER, labels, () -> value);
+    }
+
+    public void gauge(String name, DoubleSupplier value, String... labels) {
+        series(name, Type.GAUGE, labels, () -> value);
+    }
+
+    /**
+     * Runs the query phase, recording how long it took and, if it returns a
+     * collection, how many rows it produced.
+     */
+    public <T> T time(String query, Supplier<T> phase) {
+        long start = System.nanoTime();
+        T result = phase.get();
+        histogram(QUERY_SECONDS, "query", query).record(System.nanoTime() - start);
+        if (result instanceof Collection) {
+            counter(QUERY_ROWS, "query", query).add(((Collection<?>) result).size());
+        }
+        return result;
+    }
+
+    public <R> List<R> resultList(String query, TypedQuery<R> typedQuery) {
+        return time(query, typedQuery::getResultList);
+    }
+
+    private Object series(String name, Type type, String[] labels, Supplier<Object> factory) {
+        Family family = families.computeIfAbsent(name, n -> new Family(type));
+        if (family.type != type) {
+            throw new IllegalArgumentException(name + " is a " + family.type.exposition + ", not a " + type.exposition);
+        }
+        return family.series.computeIfAbsent(labels(labels), l -> factory.get());
+    }
+
+    private static String labels(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs: " + String.join(",", labels));
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            sb.append(i == 0 ? "" : ",").append(labels[i]).append("=\"");
+            String value = labels[i + 1];
+            for (int c = 0; c < value.length(); c++) {
+                char ch = value.charAt(c);
+                if (ch == '\\' || ch == '"') sb.append('\\').append(ch);
+                else if (ch == '\n') sb.append("\\n");
+                else sb.append(ch);
+            }
+            sb.append('"');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes every metric in the Prometheus text exposition format, version
+     * 0.0.4, sorted by name and labels.
+     */
+    public void write(Writer out) throws IOException {
+        for (Map.Entry<String, Family> f : new TreeMap<>(families).entrySet()) {
+            String name = f.getKey();
+            Family family = f.getValue();
+            Map<String, Object> series = new TreeMap<>(family.series);
+            out.write("# TYPE " + name + " " + family.type.exposition + "\n");
+            for (Map.Entry<String, Object> s : series.entrySet()) {
+                String labels = s.getKey();
+                Object metric = s.getValue();
+                if (metric instanceof LatencyHistogram) {
+                    LatencyHistogram h = (LatencyHistogram) metric;
+                    for (double q : QUANTILES) {
+                        sample(out, name, labels, "quantile=\"" + q + "\"", h.getValueAtQuantile(q) / NANOS_PER_SECOND);
+                    }
+                    sample(out, name + "_sum", labels, null, h.getSum() / NANOS_PER_SECOND);
+                    sample(out, name + "_count", labels, null, h.getCount());
+                } else if (metric instanceof LongAdder) {
+                    sample(out, name, labels, null, ((LongAdder) metric).sum());
+                } else if (metric instanceof LongSupplier) {
+                    sample(out, name, labels, null, ((LongSupplier) metric).getAsLong());
+                } else {
+                    sample(out, name, labels, null, ((DoubleSupplier) metric).getAsDouble());
+                }
+            }
+            if (family.type == Type.SUMMARY) {
+                out.write("# TYPE " + name + "_max gauge\n");
+                for (Map.Entry<String, Object> s : series.entrySet()) {
+                    sample(out, name + "_max", s.getKey(), null, ((LatencyHistogram) s.getValue()).getMax() / NANOS_PER_SECOND);
+                }
+            }
+        }
+    }
+
+    private static void sample(Writer out, String name, String labels, String extra, double value) throws IOException {
+        out.write(name);
+        if (!labels.isEmpty() || extra != null) {
+            out.write("{" + labels + (labels.isEmpty() || extra == null ? "" : ",") + (extra == null ? "" : extra) + "}");
+        }
+        out.write(" ");
+        out.write(value == Math.rint(value) && !Double.isInfinite(value) ? Long.toString((long) value) : Double.toString(value));
+        out.write("\n");
+    }
+}
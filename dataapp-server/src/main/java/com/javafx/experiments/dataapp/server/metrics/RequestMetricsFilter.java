@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.server.metrics;
+
+import org.glassfish.jersey.server.ExtendedUriInfo;
+import org.glassfish.jersey.uri.UriTemplate;
+
+import javax.annotation.Priority;
+import javax.inject.Inject;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Records the latency, status and number of rows returned of every request,
+ * per endpoint. The endpoint is the matched path template, so requests for
+ * different ranges of the same resource method share their metrics.
+ * <p/>
+ * Suspended requests are timed until they are resumed, which includes the
+ * time spent waiting for a RequestLane.
+ */
+@Priority(Priorities.AUTHENTICATION)
+public class RequestMetricsFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final String START_PROPERTY = RequestMetricsFilter.class.getName() + ".start";
+    private static final String MODEL_PACKAGE = "com.javafx.experiments.dataapp.model.";
+
+    @Inject
+    private MetricsRegistry metrics;
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        //runs before the other filters, so requests they abort are timed too
+        request.setProperty(START_PROPERTY, System.nanoTime());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+        Object start = request.getProperty(START_PROPERTY);
+        if (start == null) {
+            return;
+        }
+        String endpoint = endpoint(request);
+        metrics.histogram(MetricsRegistry.REQUEST_SECONDS, "endpoint", endpoint).record(System.nanoTime() - (Long) start);
+        metrics.counter(MetricsRegistry.REQUESTS, "endpoint", endpoint, "status", Integer.toString(response.getStatus())).increment();
+        Object entity = response.getEntity();
+        if (entity instanceof Collection) {
+            metrics.counter(MetricsRegistry.RESPONSE_ROWS, "endpoint", endpoint).add(((Collection<?>) entity).size());
+        }
+    }
+
+    private static String endpoint(ContainerRequestContext request) {
+        List<UriTemplate> templates = ((ExtendedUriInfo) request.getUriInfo()).getMatchedTemplates();
+        if (templates.isEmpty()) {
+            return "unmatched";
+        }
+        //the templates come innermost first
+        StringBuilder sb = new StringBuilder();
+        for (int i = templates.size() - 1; i >= 0; i--) {
+            String template = templates.get(i).getTemplate();
+            if (template.startsWith("/")) template = template.substring(1);
+            if (template.endsWith("/")) template = template.substring(0, template.length() - 1);
+            if (template.isEmpty()) continue;
+            sb.append('/').append(template.startsWith(MODEL_PACKAGE) ? template.substring(MODEL_PACKAGE.length()) : template);
+        }
+        return sb.length() == 0 ? "/" : sb.toString();
+    }
+}
@@ -62,9 +62,13 @@ public abstract class AbstractFacade<T> {
     }
 
     public List<T> findAll() {
-        CriteriaQuery<T> cq = getEntityManager().getCriteriaBuilder().createQuery(entityClass);
+        return findAll(getEntityManager());
+    }
+
+    protected List<T> findAll(EntityManager em) {
+        CriteriaQuery<T> cq = em.getCriteriaBuilder().createQuery(entityClass);
         cq.select(cq.from(entityClass));
-        return getEntityManager().createQuery(cq).getResultList();
+        return em.createQuery(cq).getResultList();
     }
 
     public List<T> findRange(int[] range) {
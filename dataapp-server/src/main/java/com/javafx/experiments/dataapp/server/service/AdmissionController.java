@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.server.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Limits how many expensive requests run at once, with a limit that follows
+ * the observed latency.
+ * <p/>
+ * The lowest latency seen recently stands for an unloaded H2. While requests
+ * take about as long, the limit grows by roughly its square root per sample;
+ * once they take more than twice as long the limit shrinks in proportion, so
+ * queries stop piling up in H2 and slowing each other down. Requests over the
+ * limit wait in a bounded queue and are started as permits are released.
+ * Only requests that actually ran their work are sampled; a permit given
+ * back for a request that never ran, e.g. because it timed out in the queue,
+ * says nothing about how fast H2 is.
+ * When the queue is full they are shed, and the caller should answer 503 with
+ * the {@link #getRetryAfterSeconds() Retry-After} estimate.
+ */
+public class AdmissionController {
+
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double SMOOTHING = 0.2;
+    private static final int MIN_LATENCY_WINDOW = 100;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int queueCapacity;
+    private final Deque<Consumer<Permit>> waiting = new ArrayDeque<>();
+
+    //guarded by this
+    private double limit;
+    private int inFlight;
+    private long minLatency;
+    private long windowMinLatency = Long.MAX_VALUE;
+    private int windowSamples;
+    private double averageLatency;
+    private long admitted;
+    private long shed;
+    private long expired;
+    private int maxQueueDepth;
+
+    public AdmissionController(int initialLimit, int minLimit, int maxLimit, int queueCapacity) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.queueCapacity = queueCapacity;
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+    }
+
+    /**
+     * Hands a permit to the task, now if the limit allows it and otherwise
+     * once one is released.
+     *
+     * @return false if the request was shed because the wait queue is full
+     */
+    public boolean submit(Consumer<Permit> task) {
+        Permit permit;
+        synchronized (this) {
+            if (inFlight < (int) limit) {
+                permit = admit();
+            } else if (waiting.size() < queueCapacity) {
+                waiting.add(task);
+                maxQueueDepth = Math.max(maxQueueDepth, waiting.size());
+                return true;
+            } else {
+                shed++;
+                return false;
+            }
+        }
+        task.accept(permit);
+        return true;
+    }
+
+    /**
+     * Removes a task that is still waiting, e.g. because its request timed
+     * out.
+     *
+     * @return false if the task already got its permit
+     */
+    public synchronized boolean withdraw(Consumer<Permit> task) {
+        if (waiting.remove(task)) {
+            expired++;
+            return true;
+        }
+        return false;
+    }
+
+    private Permit admit() {
+        inFlight++;
+        admitted++;
+        return new Permit();
+    }
+
+    private void release(Permit permit, boolean computed) {
+        long latency = System.nanoTime() - permit.start;
+        List<Consumer<Permit>> startable = new ArrayList<>();
+        List<Permit> permits = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            if (computed) {
+                sample(latency);
+            }
+            while (!waiting.isEmpty() && inFlight < (int) limit) {
+                startable.add(waiting.poll());
+                permits.add(admit());
+            }
+        }
+        for (int i = 0; i < startable.size(); i++) {
+            startable.get(i).accept(permits.get(i));
+        }
+    }
+
+    //called holding the monitor
+    private void sample(long latency) {
+        windowMinLatency = Math.min(windowMinLatency, latency);
+        if (minLatency == 0 || latency < minLatency) {
+            minLatency = latency;
+        }
+        if (++windowSamples == MIN_LATENCY_WINDOW) {
+            //let the baseline rise again after the data or the machine got slower
+            minLatency = windowMinLatency;
+            windowMinLatency = Long.MAX_VALUE;
+            windowSamples = 0;
+        }
+        averageLatency = averageLatency == 0 ? latency : averageLatency * (1 - SMOOTHING) + latency * SMOOTHING;
+
+        double gradient = Math.max(0.5, Math.min(1.0, LATENCY_TOLERANCE * minLatency / (double) latency));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        if (inFlight + 1 < limit / 2) {
+            //only grow while the limit is actually being used
+            newLimit = Math.min(newLimit, limit);
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+    }
+
+    /**
+     * Seconds a shed client should wait: the time the queue ahead of it takes
+     * to drain at the current limit and latency, at least one.
+     */
+    public synchronized long getRetryAfterSeconds() {
+        double drainNanos = averageLatency * (waiting.size() + 1) / Math.max(1, (int) limit);
+        return Math.max(1, (long) Math.ceil(drainNanos / TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueueDepth() {
+        return waiting.size();
+    }
+
+    public synchronized int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public synchronized long getAdmittedCount() {
+        return admitted;
+    }
+
+    public synchronized long getShedCount() {
+        return shed;
+    }
+
+    public synchronized long getExpiredCount() {
+        return expired;
+    }
+
+    public synchronized String getStats() {
+        return "limit=" + (int) limit
+                + " inFlight=" + inFlight
+                + " queued=" + waiting.size() + "/" + queueCapacity
+                + " maxQueued=" + maxQueueDepth
+                + " admitted=" + admitted
+                + " shed=" + shed
+                + " expired=" + expired
+                + " minLatency=" + TimeUnit.NANOSECONDS.toMillis(minLatency) + "ms"
+                + " avgLatency=" + TimeUnit.NANOSECONDS.toMillis((long) averageLatency) + "ms";
+    }
+
+    /**
+     * Leave to run one request. Give it back exactly once, when the work of
+     * the request has ended: with {@link #release()} if the work ran, with
+     * {@link #cancel()} if it never did.
+     */
+    public final class Permit {
+        private final long start = System.nanoTime();
+        private boolean released;
+
+        private Permit() {
+        }
+
+        /**
+         * Gives the permit back and samples its latency.
+         */
+        public void release() {
+            giveBack(true);
+        }
+
+        /**
+         * Gives the permit back without sampling its latency.
+         */
+        public void cancel() {
+            giveBack(false);
+        }
+
+        private void giveBack(boolean computed) {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            AdmissionController.this.release(this, computed);
+        }
+    }
+}
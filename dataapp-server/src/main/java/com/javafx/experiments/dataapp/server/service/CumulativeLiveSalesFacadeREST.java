@@ -32,12 +32,19 @@
 package com.javafx.experiments.dataapp.server.service;
 
 
-import com.javafx.experiments.dataapp.model.ProductType;
-import com.javafx.experiments.dataapp.model.Region;
+import com.javafx.experiments.dataapp.model.transit.HistoryRangeSales;
 import com.javafx.experiments.dataapp.model.transit.ProductTypeTransitCumulativeSeriesSales;
 import com.javafx.experiments.dataapp.model.transit.RegionTransitCumulativeSales;
 import com.javafx.experiments.dataapp.model.transit.StateTransitCumulativeSales;
+import com.javafx.experiments.dataapp.model.transit.TransitBinaryCodec;
 import com.javafx.experiments.dataapp.model.transit.TransitCumulativeSales;
+import com.javafx.experiments.dataapp.server.aggregation.DailySalesCube;
+import com.javafx.experiments.dataapp.server.aggregation.DimensionRegistry;
+import com.javafx.experiments.dataapp.server.aggregation.JpaRangeAggregator;
+import com.javafx.experiments.dataapp.server.aggregation.RangeAggregator;
+import com.javafx.experiments.dataapp.server.cache.DataVersioned;
+import com.javafx.experiments.dataapp.server.cache.ResultCache;
+import com.javafx.experiments.dataapp.server.metrics.MetricsRegistry;
 
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
@@ -47,16 +54,41 @@ import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.GenericType;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Path("com.javafx.experiments.dataapp.model.cumulativelivesales")
 public class CumulativeLiveSalesFacadeREST {
 
+    private static final Type TRANSIT_LIST = new GenericType<List<TransitCumulativeSales>>() {}.getType();
+    private static final Type TYPE_SERIES_LIST = new GenericType<List<ProductTypeTransitCumulativeSeriesSales>>() {}.getType();
+    private static final Type REGION_LIST = new GenericType<List<RegionTransitCumulativeSales>>() {}.getType();
+    private static final Type STATE_LIST = new GenericType<List<StateTransitCumulativeSales>>() {}.getType();
+
+    @Inject
+    private RequestLanes requestLanes;
+
+    @Inject
+    private DailySalesCube dailySalesCube;
+
+    @Inject
+    private DimensionRegistry dimensionRegistry;
+
+    @Inject
+    private ResultCache resultCache;
+
     @Inject
-    private EntityManager em;
+    private RequestCoalescer requestCoalescer;
+
+    @Inject
+    private MetricsRegistry metrics;
 
     private static final String BASE_RANGE_QUERY = 
             "select "
@@ -70,38 +102,6 @@ public class CumulativeLiveSalesFacadeREST {
             + "group by hs.date "
             + "order by hs.date desc";
     
-    private static final String TYPE_SUM_QUERY = 
-              "select sum(hs.quantity * p.cost), "
-                + "sum(hs.quantity * p.price), " 
-                + "sum(hs.quantity), "
-                + "pt.productTypeId "
-            + "from DailySales hs "
-            + "left join hs.product p "            
-            + "left join p.productType pt "    
-            + "where hs.dailySalesId >= :startId and hs.dailySalesId <= :endId "
-            + "group by pt.productTypeId";
-
-    private static final String TYPE_RANGE_QUERY = 
-            "select sum(hs.quantity), "
-                + "pt.productTypeId "
-            + "from DailySales hs "
-            + "left join hs.product p "
-            + "left join p.productType pt "
-            + "where hs.dailySalesId >= :startId and hs.dailySalesId <= :endId "
-            + "group by pt.productTypeId, hs.date ";
-
-    private static final String REGION_SUM_QUERY = 
-            "select sum(hs.quantity * p.cost), "
-                + "sum(hs.quantity * p.price), " 
-                + "sum(hs.quantity), "
-                + "r.regionId "
-            + "from DailySales hs "
-            + "left join hs.product p "
-            + "left join hs.region r "
-            + "where hs.dailySalesId >= :startId and hs.dailySalesId <= :endId "
-            + "group by r.regionId";
-    
-    
     //begin region queries
     private static final String REGION_RANGE_QUERY = 
             "select "
@@ -116,47 +116,21 @@ public class CumulativeLiveSalesFacadeREST {
             + "group by hs.date "
             + "order by hs.date desc";
     
-    private static final String REGION_TYPE_SUM_QUERY = 
-            "select sum(hs.quantity * p.cost), "
-                + "sum(hs.quantity * p.price), "
-                + "sum(hs.quantity), "
-                + "pt.productTypeId "
-            + "from DailySales hs "
-            + "left join hs.product p "            
-            + "left join p.productType pt "    
-            + "where hs.dailySalesId >= :startId and hs.dailySalesId <= :endId "
-            + "and hs.region.regionId = :regionId "
-            + "group by pt.productTypeId ";
-
-    private static final String REGION_TYPE_RANGE_QUERY = 
-            "select sum(hs.quantity), "
-                + "pt.productTypeId "
-            + "from DailySales hs "
-            + "left join hs.product p "
-            + "left join p.productType pt "
-            + "where hs.dailySalesId >= :startId and hs.dailySalesId <= :endId "
-            + "and hs.region.regionId = :regionId "
-            + "group by pt.productTypeId, hs.date ";
-
-    private static final String STATE_SUM_QUERY = 
-            "select sum(hs.quantity * p.cost), "
-                + "sum(hs.quantity * p.price), " 
-                + "sum(hs.quantity), "
-                + "hs.stateProvCd "
-            + "from DailySales hs "
-            + "left join hs.product p "
-            + "where hs.dailySalesId >= :startId and hs.dailySalesId <= :endId "
-            + "and hs.region.regionId = :regionId "
-            + "group by hs.stateProvCd";
-    
 //end region
     
     @GET
-    @Produces({"application/xml", "application/json"})
-    public List<TransitCumulativeSales> findAll() {       
+    @DataVersioned
+    @Produces({"application/xml", "application/json", TransitBinaryCodec.MEDIA_TYPE})
+    public void findAll(@Suspended AsyncResponse response) {
+        ResultCache.Key key = ResultCache.key("cumulative");
+        requestLanes.getSlow().resume(response, TRANSIT_LIST, () -> resultCache.peek(key),
+                em -> resultCache.get(key, () -> queryAll(em)));
+    }
+
+    private List<TransitCumulativeSales> queryAll(EntityManager em) {
         TypedQuery<Object[]> baseRangeQuery = em.createQuery(BASE_RANGE_QUERY, Object[].class);
         List<TransitCumulativeSales> result = new ArrayList<>();
-        List<Object[]> resultList = baseRangeQuery.getResultList();
+        List<Object[]> resultList = metrics.resultList("jpa/cumulative", baseRangeQuery);
         for (Object[] o : resultList) {
             TransitCumulativeSales t = new TransitCumulativeSales();
             t.setStartDailySalesId((Integer)o[0]);
@@ -171,12 +145,18 @@ public class CumulativeLiveSalesFacadeREST {
     
     @GET
     @Path("/recent/")
-    @Produces({"application/xml", "application/json"})
-    public List<TransitCumulativeSales> findRecent() {     
+    @Produces({"application/xml", "application/json", TransitBinaryCodec.MEDIA_TYPE})
+    public void findRecent(@Suspended AsyncResponse response) {
+        ResultCache.Key key = ResultCache.key("cumulative/recent");
+        requestLanes.getSlow().resume(response, TRANSIT_LIST, () -> resultCache.peek(key),
+                em -> resultCache.get(key, () -> queryRecent(em)));
+    }
+
+    private List<TransitCumulativeSales> queryRecent(EntityManager em) {
         TypedQuery<Object[]> baseRangeQuery = em.createQuery(BASE_RANGE_QUERY, Object[].class);
         baseRangeQuery.setMaxResults(200);
         List<TransitCumulativeSales> result = new ArrayList<>();
-        List<Object[]> resultList = baseRangeQuery.getResultList();
+        List<Object[]> resultList = metrics.resultList("jpa/cumulative/recent", baseRangeQuery);
         for (Object[] o : resultList) {
             TransitCumulativeSales t = new TransitCumulativeSales();
             t.setStartDailySalesId((Integer)o[0]);
@@ -192,111 +172,44 @@ public class CumulativeLiveSalesFacadeREST {
     
     @GET
     @Path("/type/{from}/{to}")
-    @Produces({"application/xml", "application/json"})
-    public List<ProductTypeTransitCumulativeSeriesSales> findTypeRange(@PathParam("from") String from, @PathParam("to") String to) {
-        System.out.println("START findTypeRange (from="+from+" , to="+to+")");
-        long DIFF, TIME = System.currentTimeMillis(), START_TIME = System.currentTimeMillis();
-        TypedQuery<Object[]> q = em.createQuery(TYPE_SUM_QUERY, Object[].class);
-      
-        DIFF = System.currentTimeMillis() - TIME;
-        System.out.println("    Q1 COMP TIME = "+DIFF+"ms");
-        TIME = System.currentTimeMillis();
-        
-        Parameter<Integer> p1 = q.getParameter("startId", Integer.class);
-        q.setParameter(p1, Integer.parseInt(from));
-        Parameter<Integer> p2 = q.getParameter("endId", Integer.class);
-        q.setParameter(p2, Integer.parseInt(to));
-        
-        List<ProductTypeTransitCumulativeSeriesSales> result = new ArrayList<>();
-        List<Object[]> resultList = q.getResultList();
-        
-        DIFF = System.currentTimeMillis() - TIME;
-        System.out.println("    Q1 TIME = "+DIFF+"ms");
-        TIME = System.currentTimeMillis();
-               
-        for (Object[] o : resultList) {
-            ProductTypeTransitCumulativeSeriesSales t = new ProductTypeTransitCumulativeSeriesSales();
-            t.setCost((Double)o[0]);
-            t.setSales((Double) o[1]);
-            t.setUnits((Long) o[2]);
-            ProductType pt = em.find(ProductType.class, o[3]);
-            t.setProductType(pt);
-            result.add(t);
-        }
-        
-        //building sales range
-        HashMap<ProductType, List<Double>> seriesGenerator = new HashMap<>();
-        
-        TypedQuery<Object[]> q2 = em.createQuery(TYPE_RANGE_QUERY, Object[].class);
-        p1 = q2.getParameter("startId", Integer.class);
-        q2.setParameter(p1, Integer.parseInt(from));
-        p2 = q2.getParameter("endId", Integer.class);
-        q2.setParameter(p2, Integer.parseInt(to));
-        resultList = q2.getResultList();
-        
-        DIFF = System.currentTimeMillis() - TIME;
-        System.out.println("    Q2 TIME = "+DIFF+"ms");
-        
-        for (Object[] o : resultList) {
-            ProductType pt = em.find(ProductType.class, o[1]);
-            if (!seriesGenerator.containsKey(pt)) {
-                seriesGenerator.put(pt, new ArrayList<>());
-            }
-            seriesGenerator.get(pt).add(((Long)o[0]).doubleValue());
-        }
-        for (ProductTypeTransitCumulativeSeriesSales tcs : result){
-            tcs.setSeries(seriesGenerator.get(tcs.getProductType())) ;
-        }
-        
-        DIFF = System.currentTimeMillis() - START_TIME;
-        System.out.println("    TOTAL TIME = "+DIFF+"ms");
-
-        return result;
+    @Produces({"application/xml", "application/json", TransitBinaryCodec.MEDIA_TYPE})
+    public void findTypeRange(@PathParam("from") String from, @PathParam("to") String to, @Suspended AsyncResponse response) {
+        int startId = Integer.parseInt(from);
+        int endId = Integer.parseInt(to);
+        ResultCache.Key key = ResultCache.key("cumulative/type", startId, endId);
+        requestLanes.getSlow().resume(response, TYPE_SERIES_LIST, () -> resultCache.peek(key),
+                em -> coalesced(key, () -> aggregate(em, "type", aggregator -> aggregator.findTypeRange(startId, endId))));
     }
 
     @GET
     @Path("/region/{from}/{to}")
     @Produces({"application/xml", "application/json"})
-    public List<RegionTransitCumulativeSales> findRegionRange(@PathParam("from") String from, @PathParam("to") String to) {
-        System.out.println("START findRegionRange (from="+from+" , to="+to+")");
-        long DIFF, START_TIME = System.currentTimeMillis();
-        TypedQuery<Object[]> q = em.createQuery(REGION_SUM_QUERY, Object[].class);
-        Parameter<Integer> p1 = q.getParameter("startId", Integer.class);
-        q.setParameter(p1, Integer.parseInt(from));
-        Parameter<Integer> p2 = q.getParameter("endId", Integer.class);
-        q.setParameter(p2, Integer.parseInt(to));
-        
-        List<RegionTransitCumulativeSales> result = new ArrayList<>();
-        List<Object[]> resultList = q.getResultList();
-
-        for (Object[] o : resultList) {
-            RegionTransitCumulativeSales t = new RegionTransitCumulativeSales();
-            t.setCost((Double)o[0]);
-            t.setSales((Double) o[1]);
-            t.setUnits((Long) o[2]);
-            Region region = em.find(Region.class, o[3]);
-            t.setRegion(region);
-            result.add(t);
-        }
-        
-        DIFF = System.currentTimeMillis() - START_TIME;
-        System.out.println("    TOTAL TIME = "+DIFF+"ms");
-        
-        return result;
+    public void findRegionRange(@PathParam("from") String from, @PathParam("to") String to, @Suspended AsyncResponse response) {
+        int startId = Integer.parseInt(from);
+        int endId = Integer.parseInt(to);
+        ResultCache.Key key = ResultCache.key("cumulative/region", startId, endId);
+        requestLanes.getSlow().resume(response, REGION_LIST, () -> resultCache.peek(key),
+                em -> coalesced(key, () -> aggregate(em, "region", aggregator -> aggregator.findRegionRange(startId, endId))));
     }
     
     
     //region calls --same as above but with region, this can probably be refactored to make more sense
     @GET
-    @Produces({"application/xml", "application/json"})
+    @Produces({"application/xml", "application/json", TransitBinaryCodec.MEDIA_TYPE})
     @Path("/region/{regionId}")
-    public List<TransitCumulativeSales> findAllRegion(@PathParam("regionId") Integer regionId) {       
+    public void findAllRegion(@PathParam("regionId") Integer regionId, @Suspended AsyncResponse response) {
+        ResultCache.Key key = ResultCache.key("cumulative/region", regionId);
+        requestLanes.getSlow().resume(response, TRANSIT_LIST, () -> resultCache.peek(key),
+                em -> resultCache.get(key, () -> queryAllRegion(em, regionId)));
+    }
+
+    private List<TransitCumulativeSales> queryAllRegion(EntityManager em, Integer regionId) {
         TypedQuery<Object[]> baseRangeQuery = em.createQuery(REGION_RANGE_QUERY, Object[].class);
         Parameter<Integer> p1 = baseRangeQuery.getParameter("regionId", Integer.class);
         baseRangeQuery.setParameter(p1, regionId);
         
         List<TransitCumulativeSales> result = new ArrayList<>();
-        List<Object[]> resultList = baseRangeQuery.getResultList();
+        List<Object[]> resultList = metrics.resultList("jpa/cumulative/region", baseRangeQuery);
         for (Object[] o : resultList) {
             TransitCumulativeSales t = new TransitCumulativeSales();
             t.setStartDailySalesId((Integer)o[0]);
@@ -312,100 +225,70 @@ public class CumulativeLiveSalesFacadeREST {
     @GET
     @Path("/state/{from}/{to}/{regionId}")
     @Produces({"application/xml", "application/json"})
-    public List<StateTransitCumulativeSales> findStateRange(@PathParam("from") String from, @PathParam("to") String to, @PathParam("regionId") Integer regionId) {
-        System.out.println("START findRegionRange (from="+from+" , to="+to+")");
-        long DIFF, START_TIME = System.currentTimeMillis();
-        TypedQuery<Object[]> q = em.createQuery(STATE_SUM_QUERY, Object[].class);
-        Parameter<Integer> p1 = q.getParameter("startId", Integer.class);
-        q.setParameter(p1, Integer.parseInt(from));
-        Parameter<Integer> p2 = q.getParameter("endId", Integer.class);
-        q.setParameter(p2, Integer.parseInt(to));
-        Parameter<Integer> p3 = q.getParameter("regionId", Integer.class);
-        q.setParameter(p3, regionId);
-        
-        List<StateTransitCumulativeSales> result = new ArrayList<>();
-        List<Object[]> resultList = q.getResultList();
-
-        for (Object[] o : resultList) {
-            StateTransitCumulativeSales t = new StateTransitCumulativeSales();
-            t.setCost((Double)o[0]);
-            t.setSales((Double) o[1]);
-            t.setUnits((Long) o[2]);
-            t.setState((String) o[3]);
-            result.add(t);
-        }
-        
-        DIFF = System.currentTimeMillis() - START_TIME;
-        System.out.println("    TOTAL TIME = "+DIFF+"ms");
-        
-        return result;
+    public void findStateRange(@PathParam("from") String from, @PathParam("to") String to, @PathParam("regionId") Integer regionId,
+            @Suspended AsyncResponse response) {
+        int startId = Integer.parseInt(from);
+        int endId = Integer.parseInt(to);
+        ResultCache.Key key = ResultCache.key("cumulative/state", startId, endId, regionId);
+        requestLanes.getSlow().resume(response, STATE_LIST, () -> resultCache.peek(key),
+                em -> coalesced(key, () -> aggregate(em, "state", aggregator -> aggregator.findStateRange(startId, endId, regionId))));
     }
     
     @GET
     @Path("/type/{from}/{to}/{regionId}")
-    @Produces({"application/xml", "application/json"})
-    public List<ProductTypeTransitCumulativeSeriesSales> findTypeRegionRange(@PathParam("from") String from, @PathParam("to") String to, @PathParam("regionId") Integer regionId) {
-        System.out.println("START findTypeRange (from="+from+" , to="+to+")");
-        long DIFF, TIME = System.currentTimeMillis(), START_TIME = System.currentTimeMillis();
-        TypedQuery<Object[]> q = em.createQuery(REGION_TYPE_SUM_QUERY, Object[].class);
-      
-        DIFF = System.currentTimeMillis() - TIME;
-        System.out.println("    Q1 COMP TIME = "+DIFF+"ms");
-        TIME = System.currentTimeMillis();
-        
-        Parameter<Integer> p1 = q.getParameter("startId", Integer.class);
-        q.setParameter(p1, Integer.parseInt(from));
-        Parameter<Integer> p2 = q.getParameter("endId", Integer.class);
-        q.setParameter(p2, Integer.parseInt(to));
-        Parameter<Integer> p3 = q.getParameter("regionId", Integer.class);
-        q.setParameter(p3, regionId);
-        
-        List<ProductTypeTransitCumulativeSeriesSales> result = new ArrayList<>();
-        List<Object[]> resultList = q.getResultList();
-        
-        DIFF = System.currentTimeMillis() - TIME;
-        System.out.println("    Q1 TIME = "+DIFF+"ms");
-        TIME = System.currentTimeMillis();
-               
-        for (Object[] o : resultList) {
-            ProductTypeTransitCumulativeSeriesSales t = new ProductTypeTransitCumulativeSeriesSales();
-            t.setCost((Double)o[0]);
-            t.setSales((Double) o[1]);
-            t.setUnits((Long) o[2]);
-            ProductType pt = em.find(ProductType.class, o[3]);
-            t.setProductType(pt);
-            result.add(t);
-        }
-        
-        //building sales range
-        HashMap<ProductType, List<Double>> seriesGenerator = new HashMap<>();
-        
-        TypedQuery<Object[]> q2 = em.createQuery(REGION_TYPE_RANGE_QUERY, Object[].class);
-        p1 = q2.getParameter("startId", Integer.class);
-        p2 = q2.getParameter("endId", Integer.class);
-        p3 = q2.getParameter("regionId", Integer.class);
-        q2.setParameter(p1, Integer.parseInt(from));
-        q2.setParameter(p2, Integer.parseInt(to));
-        q2.setParameter(p3, regionId);
-        resultList = q2.getResultList();
-        
-        DIFF = System.currentTimeMillis() - TIME;
-        System.out.println("    Q2 TIME = "+DIFF+"ms");
-        
-        for (Object[] o : resultList) {
-            ProductType pt = em.find(ProductType.class, o[1]);
-            if (!seriesGenerator.containsKey(pt)){
-                seriesGenerator.put(pt, new ArrayList<>());
-            }            
-            seriesGenerator.get(pt).add(((Long)o[0]).doubleValue());
-        }
-        for (ProductTypeTransitCumulativeSeriesSales tcs : result){
-            tcs.setSeries(seriesGenerator.get(tcs.getProductType()));
-        }
-        
-        DIFF = System.currentTimeMillis() - START_TIME;
-        System.out.println("    TOTAL TIME = "+DIFF+"ms");
+    @Produces({"application/xml", "application/json", TransitBinaryCodec.MEDIA_TYPE})
+    public void findTypeRegionRange(@PathParam("from") String from, @PathParam("to") String to, @PathParam("regionId") Integer regionId,
+            @Suspended AsyncResponse response) {
+        int startId = Integer.parseInt(from);
+        int endId = Integer.parseInt(to);
+        ResultCache.Key key = ResultCache.key("cumulative/type", startId, endId, regionId);
+        requestLanes.getSlow().resume(response, TYPE_SERIES_LIST, () -> resultCache.peek(key),
+                em -> coalesced(key, () -> aggregate(em, "type", aggregator -> aggregator.findTypeRegionRange(startId, endId, regionId))));
+    }
 
-        return result;
+    /**
+     * Everything the history tab needs for a range in one round trip: the
+     * product type totals and series, and the region breakdown.
+     */
+    @GET
+    @Path("/history/{from}/{to}")
+    @Produces({"application/xml", "application/json", TransitBinaryCodec.MEDIA_TYPE})
+    public void findHistoryRange(@PathParam("from") String from, @PathParam("to") String to, @Suspended AsyncResponse response) {
+        findHistoryRange(from, to, 0, response);
+    }
+
+    /**
+     * Same as above for a single region, with the state breakdown instead.
+     */
+    @GET
+    @Path("/history/{from}/{to}/{regionId}")
+    @Produces({"application/xml", "application/json", TransitBinaryCodec.MEDIA_TYPE})
+    public void findHistoryRange(@PathParam("from") String from, @PathParam("to") String to, @PathParam("regionId") Integer regionId,
+            @Suspended AsyncResponse response) {
+        int startId = Integer.parseInt(from);
+        int endId = Integer.parseInt(to);
+        ResultCache.Key key = ResultCache.key("cumulative/history", startId, endId, regionId);
+        requestLanes.getSlow().resume(response, HistoryRangeSales.class, () -> resultCache.peek(key),
+                em -> coalesced(key, () -> aggregate(em, "history", aggregator -> aggregator.findHistoryRange(startId, endId, regionId))));
+    }
+
+    /**
+     * Answers from the result cache, letting identical concurrent requests
+     * share one lookup, and one computation on a miss.
+     */
+    private <T> T coalesced(ResultCache.Key key, Supplier<T> loader) {
+        return requestCoalescer.execute(key, () -> resultCache.get(key, loader));
+    }
+
+    /**
+     * The range endpoints answer from the in-memory cube; H2 is only queried
+     * directly while the cube has not been loaded yet. The JpaRangeAggregator
+     * times each of its queries itself.
+     */
+    private <T> T aggregate(EntityManager em, String range, Function<RangeAggregator, T> query) {
+        if (dailySalesCube.isLoaded()) {
+            return metrics.time("cube/" + range, () -> query.apply(dailySalesCube));
+        }
+        return query.apply(new JpaRangeAggregator(em, dimensionRegistry, metrics));
     }
 }
@@ -31,9 +31,16 @@
  */
 package com.javafx.experiments.dataapp.server.service;
 
+import com.javafx.experiments.dataapp.model.MonthlyStateSales;
 import com.javafx.experiments.dataapp.model.Region;
 import com.javafx.experiments.dataapp.model.transit.HeatMapQuantity;
 import com.javafx.experiments.dataapp.model.transit.HeatMapRange;
+import com.javafx.experiments.dataapp.model.transit.TransitBinaryCodec;
+import com.javafx.experiments.dataapp.server.QueryExecutor;
+import com.javafx.experiments.dataapp.server.cache.DataVersioned;
+import com.javafx.experiments.dataapp.server.cache.ResultCache;
+import com.javafx.experiments.dataapp.server.metrics.MetricsRegistry;
+import com.javafx.experiments.dataapp.simulation.MonthlyStateSalesRollup;
 
 import javax.inject.Inject;
 import javax.persistence.*;
@@ -41,59 +48,40 @@ import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.GenericType;
+import java.lang.reflect.Type;
 import java.util.*;
+import java.util.concurrent.Future;
 
 @Path("com.javafx.experiments.dataapp.model.heatmap")
 public class DailySalesHeatMapFacadeREST {
 
+    private static final Type QUANTITY_LIST = new GenericType<List<HeatMapQuantity>>() {}.getType();
+
     @Inject
-    private EntityManager em;
-    
-    private static final String BASE_QUERY =
-            "select "
-            + "sum(ds1.quantity) ,"
-            + "ds1.stateProvCd "
-            + "from "
-            + "DailySales ds1 "
-            + "where "
-            + "(ds1.date >= :oldStartDate and ds1.date <= :oldEndDate) "
-            + "group by ds1.stateProvCd ";
-
-    private static final String BASE_TYPE_QUERY =
-            "select "
-            + "sum(ds1.quantity), "
-            + "ds1.stateProvCd "
-            + "from "
-            + "DailySales ds1 "
-            + "left join ds1.product p "            
-            + "where "
-            + "(ds1.date >= :oldStartDate and ds1.date <= :oldEndDate) and "
-            + "p.productType.productTypeId = :productTypeId "
-            + "group by ds1.stateProvCd ";
+    private RequestLanes requestLanes;
+
+    @Inject
+    private ResultCache resultCache;
+
+    @Inject
+    private QueryExecutor queryExecutor;
 
+    @Inject
+    private MetricsRegistry metrics;
     
     private static final String RANGE_QUERY = "select max(d.date), min(d.date) from DailySales d ";
 
-    private HashMap<String, Long> runBaseQuery(Date date){
-        Calendar cal = Calendar.getInstance();
-        long DIFF, TIME = System.currentTimeMillis();
-        TypedQuery<Object[]> baseQuery = em.createQuery(BASE_QUERY, Object[].class);
+    /**
+     * Units per state for the month of the given date, read from the
+     * MONTHLY_STATE_SALES rollup.
+     */
+    private HashMap<String, Long> runMonthlyQuery(EntityManager em, Date date, int productTypeId) {
         HashMap<String, Long> result = new HashMap<>();
-
-        cal.setTime(date);
-        int dayMin = cal.getActualMinimum(Calendar.DAY_OF_MONTH);
-        int dayMax = cal.getActualMaximum(Calendar.DAY_OF_MONTH);
-        cal.set(Calendar.DAY_OF_MONTH, dayMin);
-        Parameter<Date> p1 = baseQuery.getParameter("oldStartDate", Date.class);
-        baseQuery.setParameter(p1, cal.getTime());
-        cal.set(Calendar.DAY_OF_MONTH, dayMax);
-        Parameter<Date> p2 = baseQuery.getParameter("oldEndDate", Date.class);
-        baseQuery.setParameter(p2, cal.getTime());
-
-        List<Object[]> resultList = baseQuery.getResultList();
-
-        DIFF = System.currentTimeMillis() - TIME;
-        System.out.println("    Q TIME = "+DIFF+"ms");
+        List<Object[]> resultList = metrics.resultList("jpa/heatmap/monthly",
+                MonthlyStateSalesRollup.createUnitsByStateQuery(em, date, productTypeId));
 
         for (Object[] o : resultList) {
             result.put((String)o[1], (Long)o[0]);
@@ -101,42 +89,18 @@ public class DailySalesHeatMapFacadeREST {
 
         return result;
     }
-    
-    private HashMap<String, Long> runProductTypeQuery(Date date1, Integer productTypeId){
-        long DIFF, TIME = System.currentTimeMillis();
-        TypedQuery<Object[]> baseQuery = em.createQuery(BASE_TYPE_QUERY, Object[].class);
-        Calendar cal = Calendar.getInstance();
-        
-        HashMap<String, Long> result = new HashMap<>();
-
-        cal.setTime(date1);
-        int dayMin = cal.getActualMinimum(Calendar.DAY_OF_MONTH);
-        int dayMax = cal.getActualMaximum(Calendar.DAY_OF_MONTH);
-        cal.set(Calendar.DAY_OF_MONTH, dayMin);
-        Parameter<Date> p1 = baseQuery.getParameter("oldStartDate", Date.class);
-        baseQuery.setParameter(p1, cal.getTime());
-        cal.set(Calendar.DAY_OF_MONTH, dayMax);
-        Parameter<Date> p2 = baseQuery.getParameter("oldEndDate", Date.class);
-        baseQuery.setParameter(p2, cal.getTime());
-        Parameter<Integer> p3 = baseQuery.getParameter("productTypeId", Integer.class);
-        baseQuery.setParameter(p3, productTypeId);
-
-        List<Object[]> resultList = baseQuery.getResultList();
-
-        DIFF = System.currentTimeMillis() - TIME;
-        System.out.println("    Q TIME = "+DIFF+"ms");
-
-        for (Object[] o : resultList) {
-            result.put((String)o[1],(Long)o[0]);
-        }
-        
-        return result;
-    }
 
     @GET
+    @DataVersioned
     @Produces({"application/xml", "application/json"})
     @Path("/range/")
-    public HeatMapRange findRange() {
+    public void findRange(@Suspended AsyncResponse response) {
+        ResultCache.Key key = ResultCache.key("heatmap/range");
+        requestLanes.getSlow().resume(response, HeatMapRange.class, () -> resultCache.peek(key),
+                em -> resultCache.get(key, () -> queryRange(em)));
+    }
+
+    private static HeatMapRange queryRange(EntityManager em) {
         Query baseRangeQuery = em.createQuery(RANGE_QUERY);
         HeatMapRange result = new HeatMapRange();
         Object[] queryResult = (Object[]) baseRangeQuery.getSingleResult();
@@ -146,52 +110,63 @@ public class DailySalesHeatMapFacadeREST {
     }
 
     @GET
-    @Produces({"application/xml", "application/json"})
+    @Produces({"application/xml", "application/json", TransitBinaryCodec.MEDIA_TYPE})
     @Path("/base/{date1}/{date2}")
-    public List<HeatMapQuantity> find(@PathParam("date1") Long longDate1, @PathParam("date2") Long longDate2) {
+    public void find(@PathParam("date1") Long longDate1, @PathParam("date2") Long longDate2, @Suspended AsyncResponse response) {
+        ResultCache.Key key = ResultCache.key("heatmap/base", longDate1, longDate2);
+        requestLanes.getSlow().resume(response, QUANTITY_LIST, () -> resultCache.peek(key),
+                em -> resultCache.get(key, () -> queryBase(em, longDate1, longDate2)));
+    }
+
+    private List<HeatMapQuantity> queryBase(EntityManager em, Long longDate1, Long longDate2) {
         Date date1 = new Date(longDate1);
         Date date2 = new Date(longDate2);
         
-        HashMap<String, Long> resultMap1 = runBaseQuery(date1);
-        HashMap<String, Long> resultMap2 = runBaseQuery(date2);
-        
-        List<HeatMapQuantity> results = new ArrayList<>();
-        for(String state : Region.ALL_STATES) {
-            Long v1 = resultMap1.get(state);
-            if (v1 == null) v1 = 0L;
-            Long v2 = resultMap2.get(state);
-            if (v2 == null) v2 = 0L;
-            results.add( new HeatMapQuantity(v1-v2,state,Region.getRegionName(state)));
-        }
-        return results;
+        return comparePeriods(em, date1, MonthlyStateSales.ALL_PRODUCT_TYPES, date2, MonthlyStateSales.ALL_PRODUCT_TYPES);
     }
     
     @GET
-    @Produces({"application/xml", "application/json"})
+    @Produces({"application/xml", "application/json", TransitBinaryCodec.MEDIA_TYPE})
     @Path("/producttype/{date1}/{date2}/{productTypeId1}/{productTypeId2}")
-    public List<HeatMapQuantity> findProductType(
+    public void findProductType(
             @PathParam("date1") Long longDate1,
             @PathParam("date2") Long longDate2,
             @PathParam("productTypeId1") Integer productTypeId1,
-            @PathParam("productTypeId2") Integer productTypeId2
+            @PathParam("productTypeId2") Integer productTypeId2,
+            @Suspended AsyncResponse response
     ) {
+        ResultCache.Key key = ResultCache.key("heatmap/producttype", longDate1, longDate2, productTypeId1, productTypeId2);
+        requestLanes.getSlow().resume(response, QUANTITY_LIST, () -> resultCache.peek(key),
+                em -> resultCache.get(key, () -> queryProductType(em, longDate1, longDate2, productTypeId1, productTypeId2)));
+    }
+
+    private List<HeatMapQuantity> queryProductType(EntityManager em, Long longDate1, Long longDate2, Integer productTypeId1, Integer productTypeId2) {
         Date date1 = new Date(longDate1);
         Date date2 = new Date(longDate2);
         
-        HashMap<String, Long> resultMap1;
+        //-1 selects all product types, which is what the rollup stores them under
+        return comparePeriods(em, date1, productTypeId1, date2, productTypeId2);
+    }
+
+    /**
+     * Units per state of the first period minus those of the second. The
+     * first period is queried on the QueryExecutor while the calling thread
+     * queries the second with the given EntityManager. Both are bounded by the
+     * timeout of the slow lane, so a request that times out does not keep its
+     * lane thread waiting for the first period.
+     */
+    private List<HeatMapQuantity> comparePeriods(EntityManager em, Date date1, int productTypeId1, Date date2, int productTypeId2) {
+        int timeoutMillis = (int) requestLanes.getSlow().getTimeoutMillis();
+        Future<HashMap<String, Long>> period1 = queryExecutor.submitOrRun(
+                taskEm -> runMonthlyQuery(taskEm, date1, productTypeId1), timeoutMillis);
         HashMap<String, Long> resultMap2;
-        if (productTypeId1 == -1){
-            resultMap1 = runBaseQuery(date1);
-        }
-        else {
-            resultMap1 = runProductTypeQuery(date1, productTypeId1);
-        }
-        if (productTypeId2 == -1){
-            resultMap2 = runBaseQuery(date2);
-        }
-        else {
-            resultMap2 = runProductTypeQuery(date2, productTypeId2);
+        try {
+            resultMap2 = runMonthlyQuery(em, date2, productTypeId2);
+        } catch (RuntimeException e) {
+            period1.cancel(true);
+            throw e;
         }
+        HashMap<String, Long> resultMap1 = QueryExecutor.await(period1, timeoutMillis);
 
         List<HeatMapQuantity> results = new ArrayList<>();
         for(String state : Region.ALL_STATES) {
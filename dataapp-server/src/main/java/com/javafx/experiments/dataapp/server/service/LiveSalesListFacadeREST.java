@@ -32,6 +32,10 @@
 package com.javafx.experiments.dataapp.server.service;
 
 import com.javafx.experiments.dataapp.model.LiveSalesList;
+import com.javafx.experiments.dataapp.server.live.LiveSalesBroadcaster;
+import com.javafx.experiments.dataapp.server.live.RecentLiveSales;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.SseFeature;
 
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
@@ -42,8 +46,14 @@ import java.util.List;
 
 @Path("com.javafx.experiments.dataapp.model.livesaleslist")
 public class LiveSalesListFacadeREST extends AbstractFacade<LiveSalesList> {
+    private static final int MAX_RECENT = 500;
+
     @Inject
     private EntityManager em;
+    @Inject
+    private LiveSalesBroadcaster liveSalesBroadcaster;
+    @Inject
+    private RecentLiveSales recentLiveSales;
 
     public LiveSalesListFacadeREST() {
         super(LiveSalesList.class);
@@ -88,8 +98,12 @@ public class LiveSalesListFacadeREST extends AbstractFacade<LiveSalesList> {
     @Produces({"application/xml", "application/json"})
     @Path("/recent")
     public List<LiveSalesList> findRecent() {
-        return getEntityManager().createNamedQuery("LiveSalesList.findAll", LiveSalesList.class)
-                .setMaxResults(500)
+        List<LiveSalesList> recent = recentLiveSales.find(null, null, 0, MAX_RECENT);
+        if (recent != null) {
+            return recent;
+        }
+        return getEntityManager().createNamedQuery("LiveSalesList.findRecent", LiveSalesList.class)
+                .setMaxResults(MAX_RECENT)
                 .getResultList();
     }
     
@@ -97,9 +111,13 @@ public class LiveSalesListFacadeREST extends AbstractFacade<LiveSalesList> {
     @Produces({"application/xml", "application/json"})
     @Path("/recent/region/{regionName}")
     public List<LiveSalesList> findRecentRegion(@PathParam("regionName") String regionName) {
+        List<LiveSalesList> recent = recentLiveSales.find(regionName, null, 0, MAX_RECENT);
+        if (recent != null) {
+            return recent;
+        }
         return getEntityManager().createNamedQuery("LiveSalesList.findByRegion", LiveSalesList.class)
                 .setParameter("region", regionName)
-                .setMaxResults(500)
+                .setMaxResults(MAX_RECENT)
                 .getResultList();
     }
     
@@ -107,10 +125,14 @@ public class LiveSalesListFacadeREST extends AbstractFacade<LiveSalesList> {
     @Produces({"application/xml", "application/json"})
     @Path("/recent/region/{regionName}/{orderLineId}")
     public List<LiveSalesList> findRecentRegionFrom(@PathParam("regionName") String regionName, @PathParam("orderLineId") Integer orderLineId) {
+        List<LiveSalesList> recent = recentLiveSales.find(regionName, null, orderLineId, MAX_RECENT);
+        if (recent != null) {
+            return recent;
+        }
         return getEntityManager().createNamedQuery("LiveSalesList.findByRegionFromOrderLineId", LiveSalesList.class)
                 .setParameter("region", regionName)
                 .setParameter("orderLineId", orderLineId)
-                .setMaxResults(500)
+                .setMaxResults(MAX_RECENT)
                 .getResultList();
     }    
     
@@ -118,9 +140,13 @@ public class LiveSalesListFacadeREST extends AbstractFacade<LiveSalesList> {
     @Produces({"application/xml", "application/json"})
     @Path("/recent/producttype/{id}")
     public List<LiveSalesList> findRecentProductType(@PathParam("id") Integer productTypeId) {
+        List<LiveSalesList> recent = recentLiveSales.find(null, productTypeId, 0, MAX_RECENT);
+        if (recent != null) {
+            return recent;
+        }
         return getEntityManager().createNamedQuery("LiveSalesList.findByProductTypeId", LiveSalesList.class)
                 .setParameter("productTypeId", productTypeId)
-                .setMaxResults(500)
+                .setMaxResults(MAX_RECENT)
                 .getResultList();
     }
     
@@ -128,10 +154,14 @@ public class LiveSalesListFacadeREST extends AbstractFacade<LiveSalesList> {
     @Produces({"application/xml", "application/json"})
     @Path("/recent/producttype/{id}/{orderLineId}")
     public List<LiveSalesList> findRecentProductTypeFrom(@PathParam("id") Integer productTypeId, @PathParam("orderLineId") Integer orderLineId) {
+        List<LiveSalesList> recent = recentLiveSales.find(null, productTypeId, orderLineId, MAX_RECENT);
+        if (recent != null) {
+            return recent;
+        }
         return getEntityManager().createNamedQuery("LiveSalesList.findByProductTypeFromOrderLineId", LiveSalesList.class)
                 .setParameter("productTypeId", productTypeId)
                 .setParameter("orderLineId", orderLineId)
-                .setMaxResults(500)
+                .setMaxResults(MAX_RECENT)
                 .getResultList();
     }    
     
@@ -139,10 +169,14 @@ public class LiveSalesListFacadeREST extends AbstractFacade<LiveSalesList> {
     @Produces({"application/xml", "application/json"})
     @Path("/recent/region/producttype/{regionName}/{productTypeId}")
     public List<LiveSalesList> findRecentRegionProductType(@PathParam("regionName") String regionName, @PathParam("productTypeId") Integer productTypeId) {
+        List<LiveSalesList> recent = recentLiveSales.find(regionName, productTypeId, 0, MAX_RECENT);
+        if (recent != null) {
+            return recent;
+        }
         return getEntityManager().createNamedQuery("LiveSalesList.findByProductTypeIdByRegion", LiveSalesList.class)
                 .setParameter("productTypeId", productTypeId)
                 .setParameter("region", regionName)
-                .setMaxResults(500)
+                .setMaxResults(MAX_RECENT)
                 .getResultList();
     }
     
@@ -150,14 +184,30 @@ public class LiveSalesListFacadeREST extends AbstractFacade<LiveSalesList> {
     @Produces({"application/xml", "application/json"})
     @Path("/recent/region/producttype/{regionName}/{productTypeId}/{orderLineId}")
     public List<LiveSalesList> findRecentRegionProductTypeFrom(@PathParam("regionName") String regionName, @PathParam("productTypeId") Integer productTypeId, @PathParam("orderLineId") Integer orderLineId) {
+        List<LiveSalesList> recent = recentLiveSales.find(regionName, productTypeId, orderLineId, MAX_RECENT);
+        if (recent != null) {
+            return recent;
+        }
         return getEntityManager().createNamedQuery("LiveSalesList.findByProductTypeIdByRegionFromOrderLineId", LiveSalesList.class)
                 .setParameter("productTypeId", productTypeId)
                 .setParameter("region", regionName)
                 .setParameter("orderLineId", orderLineId)
-                .setMaxResults(500)
+                .setMaxResults(MAX_RECENT)
                 .getResultList();
     }    
 
+    /**
+     * Streams every sale committed from now on as a server-sent event, named
+     * "sale" and carrying the LIVE_SALES_LIST row as JSON with its orderLineId as
+     * event id. Fetch /recent first for the sales made before subscribing.
+     */
+    @GET
+    @Produces(SseFeature.SERVER_SENT_EVENTS)
+    @Path("/stream")
+    public EventOutput stream(@QueryParam("region") String regionName, @QueryParam("productTypeId") Integer productTypeId) {
+        return liveSalesBroadcaster.subscribe(regionName, productTypeId);
+    }
+
     @GET
     @Path("{from}/{to}")
     @Produces({"application/xml", "application/json"})
@@ -169,6 +219,10 @@ public class LiveSalesListFacadeREST extends AbstractFacade<LiveSalesList> {
     @Path("/date/{from}")
     @Produces({"application/xml", "application/json"})
     public List<LiveSalesList> findFrom(@PathParam("from") Integer from) {
+        List<LiveSalesList> recent = recentLiveSales.find(null, null, from, Integer.MAX_VALUE);
+        if (recent != null) {
+            return recent;
+        }
         TypedQuery<LiveSalesList> q = getEntityManager().createNamedQuery("LiveSalesList.findFromOrderLineId", LiveSalesList.class);
         Parameter<Integer> p = q.getParameter("orderLineId", Integer.class);
         q.setParameter(p, from);
@@ -32,19 +32,29 @@
 package com.javafx.experiments.dataapp.server.service;
 
 import com.javafx.experiments.dataapp.model.ProductType;
+import com.javafx.experiments.dataapp.server.cache.DataVersioned;
 
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.GenericType;
+import java.lang.reflect.Type;
 import java.util.List;
 
 @Path("com.javafx.experiments.dataapp.model.producttype")
 public class ProductTypeFacadeREST extends AbstractFacade<ProductType> {
+    private static final Type PRODUCT_TYPE_LIST = new GenericType<List<ProductType>>() {}.getType();
+
     @Inject
     private EntityManager em;
 
+    @Inject
+    private RequestLanes requestLanes;
+
     public ProductTypeFacadeREST() {
         super(ProductType.class);
     }
@@ -55,10 +65,10 @@ public class ProductTypeFacadeREST extends AbstractFacade<ProductType> {
     }
     
     @GET
-    @Override
+    @DataVersioned
     @Produces({"application/xml", "application/json"})
-    public List<ProductType> findAll() {
-        return super.findAll();
+    public void findAll(@Suspended AsyncResponse response) {
+        requestLanes.getFast().resume(response, PRODUCT_TYPE_LIST, em -> findAll(em));
     }
     
 }
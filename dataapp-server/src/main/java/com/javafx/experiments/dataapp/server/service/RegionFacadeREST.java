@@ -32,29 +32,38 @@
 package com.javafx.experiments.dataapp.server.service;
 
 import com.javafx.experiments.dataapp.model.Region;
+import com.javafx.experiments.dataapp.server.cache.DataVersioned;
 
 import javax.inject.Inject;
-import javax.persistence.EntityManager;
 import javax.persistence.Parameter;
 import javax.persistence.TypedQuery;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.GenericType;
+import java.lang.reflect.Type;
 import java.util.List;
 
 @Path("com.javafx.experiments.dataapp.model.region")
 public class RegionFacadeREST {
+    private static final Type REGION_LIST = new GenericType<List<Region>>() {}.getType();
+
     @Inject
-    private EntityManager em;
+    private RequestLanes requestLanes;
 
     @GET
+    @DataVersioned
     @Path("/international/{international}")
     @Produces({"application/xml", "application/json"})
-    public List<Region> findInternational(@PathParam("international") Short international) {
-        TypedQuery<Region> q = em.createNamedQuery("Region.findByInternational", Region.class);
-        Parameter<Short> p = q.getParameter("international", Short.class);
-        q.setParameter(p, international);
-        return q.getResultList();
+    public void findInternational(@PathParam("international") Short international, @Suspended AsyncResponse response) {
+        requestLanes.getFast().resume(response, REGION_LIST, em -> {
+            TypedQuery<Region> q = em.createNamedQuery("Region.findByInternational", Region.class);
+            Parameter<Short> p = q.getParameter("international", Short.class);
+            q.setParameter(p, international);
+            return q.getResultList();
+        });
     }
 }
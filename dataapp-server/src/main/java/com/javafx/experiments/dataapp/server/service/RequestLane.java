@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2008, 2011 Oracle and/or its affiliates.
+ * All rights reserved. Use is subject to license terms.
+ *
+ * This file is available and licensed under the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  - Neither the name of Oracle Corporation nor the names of its
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.javafx.experiments.dataapp.server.service;
+
+import com.javafx.experiments.dataapp.server.QueryExecutor;
+
+import javax.persistence.EntityManager;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.lang.reflect.Type;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs suspended resource methods on a QueryExecutor of their own, so the
+ * container thread is handed back while the query runs.
+ * <p/>
+ * A request that is not answered within the lane's timeout is resumed with
+ * 503 Service Unavailable; if it is still queued its work never runs, and if
+ * it is running its queries hit the QueryExecutor's query timeout. A request that
+ * finds the lane full is answered with 503 straight away.
+ * <p/>
+ * A lane may have an AdmissionController in front of its executor, which
+ * decides how many requests are handed to the executor at once and sheds the
+ * excess with 503 and Retry-After.
+ */
+public class RequestLane {
+
+    private final QueryExecutor executor;
+    private final long timeoutMillis;
+    private final AdmissionController admission;
+    private final AtomicLong timeouts = new AtomicLong();
+
+    public RequestLane(QueryExecutor executor, long timeoutMillis) {
+        this(executor, timeoutMillis, null);
+    }
+
+    public RequestLane(QueryExecutor executor, long timeoutMillis, AdmissionController admission) {
+        this.executor = executor;
+        this.timeoutMillis = timeoutMillis;
+        this.admission = admission;
+    }
+
+    /**
+     * Resumes the response with the result of the work, computed on this
+     * lane. The entity type keeps the generic type of the result, which the
+     * XML and binary writers need.
+     * <p/>
+     * The permit of a request is held until its work has ended, also when the
+     * response was already answered with 503 because it timed out.
+     */
+    public <T> void resume(AsyncResponse response, Type entityType, Function<EntityManager, T> work) {
+        //set by whichever of the task and the timeout handler gets to the request first
+        final AtomicBoolean claimed = new AtomicBoolean();
+        final Consumer<AdmissionController.Permit> start = permit -> {
+            if (claimed.get()) {
+                cancel(permit);
+                return;
+            }
+            try {
+                executor.submit(em -> {
+                    if (!claimed.compareAndSet(false, true)) {
+                        cancel(permit);
+                        return null;
+                    }
+                    try {
+                        response.resume(new GenericEntity<>(work.apply(em), entityType));
+                    } catch (RuntimeException | Error e) {
+                        response.resume(e);
+                    } finally {
+                        if (permit != null) {
+                            permit.release();
+                        }
+                    }
+                    return null;
+                });
+            } catch (RejectedExecutionException e) {
+                cancel(permit);
+                if (claimed.compareAndSet(false, true)) {
+                    response.resume(serviceUnavailable());
+                }
+            }
+        };
+
+        response.setTimeoutHandler(r -> {
+            timeouts.incrementAndGet();
+            //a queued task still runs, but only to give its permit back
+            claimed.set(true);
+            if (admission != null) {
+                admission.withdraw(start);
+            }
+            r.resume(serviceUnavailable());
+        });
+        response.setTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+
+        if (admission == null) {
+            start.accept(null);
+        } else if (!admission.submit(start)) {
+            response.resume(serviceUnavailable());
+        }
+    }
+
+    /**
+     * Like {@link #resume(AsyncResponse, Type, Function)}, but answers straight
+     * away on the calling thread if the cached supplier has the result, without
+     * a permit or a place on the lane.
+     */
+    public <T> void resume(AsyncResponse response, Type entityType, Supplier<T> cached, Function<EntityManager, T> work) {
+        T result = cached.get();
+        if (result != null) {
+            response.resume(new GenericEntity<>(result, entityType));
+        } else {
+            resume(response, entityType, work);
+        }
+    }
+
+    private static void cancel(AdmissionController.Permit permit) {
+        if (permit != null) {
+            permit.cancel();
+        }
+    }
+
+    private Response serviceUnavailable() {
+        Response.ResponseBuilder builder = Response.status(Response.Status.SERVICE_UNAVAILABLE);
+        if (admission != null) {
+            builder.header(HttpHeaders.RETRY_AFTER, admission.getRetryAfterSeconds());
+        }
+        return builder.build();
+    }
+
+    /**
+     * The admission controller of this lane, or null if it admits every
+     * request its executor can queue.
+     */
+    public AdmissionController getAdmission() {
+        return admission;
+    }
+
+    public QueryExecutor getExecutor() {
+        return executor;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    public String getStats() {
+        return executor.getStats() + " timeout=" + timeoutMillis + "ms timeouts=" + timeouts.get()
+                + (admission != null ? " admission: " + admission.getStats() : "");
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}